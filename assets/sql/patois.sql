@@ -37,7 +37,8 @@
 --
 -- If you modify the database schema, make sure to increment the
 -- DATABASE_VERSION field in ro.undef.patois.Database, and make sure you handle
--- upgrading from previous versions of the database schema.
+-- upgrading from previous versions of the database schema: the statements in
+-- sql/upgrade-N.sql are run to upgrade a database from version N-1 to N.
 
 CREATE TABLE languages (
     _id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -74,7 +75,12 @@ CREATE TABLE words (
     -- Same as last_practice_from, but in the "to" direction.
     last_practice_to INTEGER NOT NULL DEFAULT 0,
     -- Same as next_practice_from, but in the "to" direction.
-    next_practice_to INTEGER NOT NULL
+    next_practice_to INTEGER NOT NULL,
+    -- The translations of this word, as shown by BrowseWordsActivity (in the
+    -- mark-up of BrowseWordsActivity.applyWordMarkup()), or '' if there are
+    -- none.  Kept up-to-date by the display_translations_* triggers, so that
+    -- browsing the words never has to join them with their translations.
+    display_translations TEXT NOT NULL DEFAULT ''
 );
 
 CREATE TABLE translations (
@@ -105,6 +111,31 @@ CREATE TABLE preferences (
     value NOT NULL
 );
 
+-- Aggregate practice statistics, shown by MainActivity.  There is one row for
+-- each language, direction, level and day when the words become due for
+-- practice, counting the words in that bucket.  The rows are kept up-to-date
+-- by the practice_stats_* triggers, so reading the statistics of a language
+-- never has to scan the words table.
+CREATE TABLE practice_stats (
+    language_id INTEGER NOT NULL,
+    -- Direction: 0 for "from", 1 for "to" (see practice_log).
+    direction INTEGER NOT NULL,
+    -- The level_from or level_to of the words.
+    level INTEGER NOT NULL,
+    -- The next_practice_from or next_practice_to of the words, in days since
+    -- the UNIX epoch.
+    due_day INTEGER NOT NULL,
+    -- The number of words in this bucket.  Rows are deleted when this drops
+    -- to zero.
+    num_words INTEGER NOT NULL,
+    PRIMARY KEY (language_id, direction, level, due_day)
+);
+
+-- Full-text index over the word names, used for filtering the words in
+-- BrowseWordsActivity.  The docid of each row is the _id of the word.  It's
+-- kept in sync with the words table by the index_words_* triggers.
+CREATE VIRTUAL TABLE words_fts USING fts3 (name);
+
 CREATE TRIGGER delete_words_when_deleting_language DELETE ON languages
     BEGIN
         DELETE FROM words
@@ -167,8 +198,221 @@ CREATE TRIGGER count_translations_on_delete DELETE ON translations
             WHERE _id = OLD.word_id1;
     END;
 
+-- These must be AFTER triggers: NEW._id isn't known yet in a BEFORE INSERT
+-- trigger.
+CREATE TRIGGER index_words_on_insert AFTER INSERT ON words
+    BEGIN
+        INSERT INTO words_fts (docid, name)
+            VALUES (NEW._id, NEW.name);
+    END;
+
+CREATE TRIGGER index_words_on_update AFTER UPDATE OF name ON words
+    BEGIN
+        UPDATE words_fts
+            SET name = NEW.name
+            WHERE docid = OLD._id;
+    END;
+
+CREATE TRIGGER index_words_on_delete AFTER DELETE ON words
+    BEGIN
+        DELETE FROM words_fts
+            WHERE docid = OLD._id;
+    END;
+
 CREATE TRIGGER delete_practice_info_when_deleting_word DELETE ON words
     BEGIN
         DELETE FROM practice_log
             WHERE word_id = OLD._id;
     END;
+
+-- SQLite has no "INSERT OR UPDATE", so the counts are incremented by first
+-- making sure that the row exists.
+CREATE TRIGGER practice_stats_on_insert AFTER INSERT ON words
+    BEGIN
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 0, NEW.level_from,
+                    NEW.next_practice_from / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 0 AND
+                  level = NEW.level_from AND due_day = NEW.next_practice_from / 86400;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 1, NEW.level_to,
+                    NEW.next_practice_to / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 1 AND
+                  level = NEW.level_to AND due_day = NEW.next_practice_to / 86400;
+    END;
+
+CREATE TRIGGER practice_stats_on_delete AFTER DELETE ON words
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 0 AND
+                  level = OLD.level_from AND due_day = OLD.next_practice_from / 86400;
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 1 AND
+                  level = OLD.level_to AND due_day = OLD.next_practice_to / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+    END;
+
+CREATE TRIGGER practice_stats_on_update_from
+    AFTER UPDATE OF language_id, level_from, next_practice_from ON words
+    WHEN OLD.language_id != NEW.language_id OR
+         OLD.level_from != NEW.level_from OR
+         OLD.next_practice_from / 86400 != NEW.next_practice_from / 86400
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 0 AND
+                  level = OLD.level_from AND due_day = OLD.next_practice_from / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 0, NEW.level_from,
+                    NEW.next_practice_from / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 0 AND
+                  level = NEW.level_from AND due_day = NEW.next_practice_from / 86400;
+    END;
+
+CREATE TRIGGER practice_stats_on_update_to
+    AFTER UPDATE OF language_id, level_to, next_practice_to ON words
+    WHEN OLD.language_id != NEW.language_id OR
+         OLD.level_to != NEW.level_to OR
+         OLD.next_practice_to / 86400 != NEW.next_practice_to / 86400
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 1 AND
+                  level = OLD.level_to AND due_day = OLD.next_practice_to / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 1, NEW.level_to,
+                    NEW.next_practice_to / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 1 AND
+                  level = NEW.level_to AND due_day = NEW.next_practice_to / 86400;
+    END;
+
+-- The display_translations of a word are rebuilt whenever its translations
+-- change, and whenever one of its translations is renamed or moved to
+-- another language, or the code of that language changes.
+CREATE TRIGGER display_translations_on_insert AFTER INSERT ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = NEW.word_id1 AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id = NEW.word_id1;
+    END;
+
+CREATE TRIGGER display_translations_on_delete AFTER DELETE ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = OLD.word_id1 AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id = OLD.word_id1;
+    END;
+
+CREATE TRIGGER display_translations_on_update AFTER UPDATE ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (OLD.word_id1, NEW.word_id1);
+    END;
+
+CREATE TRIGGER display_translations_on_update_word
+    AFTER UPDATE OF name, language_id ON words
+    WHEN OLD.name != NEW.name OR OLD.language_id != NEW.language_id
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (SELECT word_id1 FROM translations WHERE word_id2 = NEW._id);
+    END;
+
+CREATE TRIGGER display_translations_on_update_language
+    AFTER UPDATE OF code ON languages
+    WHEN OLD.code != NEW.code
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (SELECT t.word_id1
+                            FROM translations AS t, words AS w
+                            WHERE t.word_id2 = w._id AND w.language_id = NEW._id);
+    END;
+
+-- Indexes for the queries in ro.undef.patois.Database.  The practice indexes
+-- cover all the columns used by getWordWeights(), so picking words for
+-- practice never has to read the words table itself.
+
+CREATE INDEX words_by_name ON words (language_id, name);
+
+-- The browse indexes let BrowseWordsActivity page through the words of a
+-- language in the "by name" and "by date" sort orders without sorting them.
+CREATE INDEX words_by_sort_name ON words (language_id, name COLLATE NOCASE);
+
+CREATE INDEX words_by_timestamp ON words (language_id, timestamp);
+
+CREATE INDEX words_by_practice_from ON words (
+    language_id,
+    next_practice_from,
+    num_translations,
+    last_practice_from,
+    last_practice_to
+);
+
+CREATE INDEX words_by_practice_to ON words (
+    language_id,
+    next_practice_to,
+    num_translations,
+    last_practice_from,
+    last_practice_to
+);
+
+-- The UNIQUE constraint already indexes translations by word_id1.
+CREATE INDEX translations_by_word_id2 ON translations (word_id2);
+
+CREATE INDEX practice_log_by_word_id ON practice_log (word_id);
+
+-- Database loads all the preferences at once, but writes them one by one
+-- with INSERT OR REPLACE, which needs the names to be unique.
+CREATE UNIQUE INDEX preferences_by_name ON preferences (name);
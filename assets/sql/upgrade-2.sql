@@ -0,0 +1,43 @@
+-- Upgrade the Patois database schema from version 1 to version 2.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 2 adds the indexes used by the practice, browse and autocomplete
+-- queries.
+
+CREATE INDEX words_by_name ON words (language_id, name);
+
+CREATE INDEX words_by_practice_from ON words (
+    language_id,
+    next_practice_from,
+    num_translations,
+    last_practice_from,
+    last_practice_to
+);
+
+CREATE INDEX words_by_practice_to ON words (
+    language_id,
+    next_practice_to,
+    num_translations,
+    last_practice_from,
+    last_practice_to
+);
+
+-- The UNIQUE constraint already indexes translations by word_id1.
+CREATE INDEX translations_by_word_id2 ON translations (word_id2);
+
+CREATE INDEX practice_log_by_word_id ON practice_log (word_id);
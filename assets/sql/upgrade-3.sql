@@ -0,0 +1,48 @@
+-- Upgrade the Patois database schema from version 2 to version 3.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 3 adds a full-text index over the word names.
+
+-- Full-text index over the word names, used for filtering the words in
+-- BrowseWordsActivity.  The docid of each row is the _id of the word.  It's
+-- kept in sync with the words table by the index_words_* triggers.
+CREATE VIRTUAL TABLE words_fts USING fts3 (name);
+
+INSERT INTO words_fts (docid, name)
+    SELECT _id, name FROM words;
+
+-- These must be AFTER triggers: NEW._id isn't known yet in a BEFORE INSERT
+-- trigger.
+CREATE TRIGGER index_words_on_insert AFTER INSERT ON words
+    BEGIN
+        INSERT INTO words_fts (docid, name)
+            VALUES (NEW._id, NEW.name);
+    END;
+
+CREATE TRIGGER index_words_on_update AFTER UPDATE OF name ON words
+    BEGIN
+        UPDATE words_fts
+            SET name = NEW.name
+            WHERE docid = OLD._id;
+    END;
+
+CREATE TRIGGER index_words_on_delete AFTER DELETE ON words
+    BEGIN
+        DELETE FROM words_fts
+            WHERE docid = OLD._id;
+    END;
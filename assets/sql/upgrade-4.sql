@@ -0,0 +1,125 @@
+-- Upgrade the Patois database schema from version 3 to version 4.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 4 adds the aggregate practice statistics.
+
+-- Aggregate practice statistics, shown by MainActivity.  There is one row for
+-- each language, direction, level and day when the words become due for
+-- practice, counting the words in that bucket.  The rows are kept up-to-date
+-- by the practice_stats_* triggers, so reading the statistics of a language
+-- never has to scan the words table.
+CREATE TABLE practice_stats (
+    language_id INTEGER NOT NULL,
+    -- Direction: 0 for "from", 1 for "to" (see practice_log).
+    direction INTEGER NOT NULL,
+    -- The level_from or level_to of the words.
+    level INTEGER NOT NULL,
+    -- The next_practice_from or next_practice_to of the words, in days since
+    -- the UNIX epoch.
+    due_day INTEGER NOT NULL,
+    -- The number of words in this bucket.  Rows are deleted when this drops
+    -- to zero.
+    num_words INTEGER NOT NULL,
+    PRIMARY KEY (language_id, direction, level, due_day)
+);
+
+INSERT INTO practice_stats
+    SELECT language_id, 0, level_from, next_practice_from / 86400, count(*)
+        FROM words
+        GROUP BY language_id, level_from, next_practice_from / 86400;
+
+INSERT INTO practice_stats
+    SELECT language_id, 1, level_to, next_practice_to / 86400, count(*)
+        FROM words
+        GROUP BY language_id, level_to, next_practice_to / 86400;
+
+-- SQLite has no "INSERT OR UPDATE", so the counts are incremented by first
+-- making sure that the row exists.
+CREATE TRIGGER practice_stats_on_insert AFTER INSERT ON words
+    BEGIN
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 0, NEW.level_from,
+                    NEW.next_practice_from / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 0 AND
+                  level = NEW.level_from AND due_day = NEW.next_practice_from / 86400;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 1, NEW.level_to,
+                    NEW.next_practice_to / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 1 AND
+                  level = NEW.level_to AND due_day = NEW.next_practice_to / 86400;
+    END;
+
+CREATE TRIGGER practice_stats_on_delete AFTER DELETE ON words
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 0 AND
+                  level = OLD.level_from AND due_day = OLD.next_practice_from / 86400;
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 1 AND
+                  level = OLD.level_to AND due_day = OLD.next_practice_to / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+    END;
+
+CREATE TRIGGER practice_stats_on_update_from
+    AFTER UPDATE OF language_id, level_from, next_practice_from ON words
+    WHEN OLD.language_id != NEW.language_id OR
+         OLD.level_from != NEW.level_from OR
+         OLD.next_practice_from / 86400 != NEW.next_practice_from / 86400
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 0 AND
+                  level = OLD.level_from AND due_day = OLD.next_practice_from / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 0, NEW.level_from,
+                    NEW.next_practice_from / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 0 AND
+                  level = NEW.level_from AND due_day = NEW.next_practice_from / 86400;
+    END;
+
+CREATE TRIGGER practice_stats_on_update_to
+    AFTER UPDATE OF language_id, level_to, next_practice_to ON words
+    WHEN OLD.language_id != NEW.language_id OR
+         OLD.level_to != NEW.level_to OR
+         OLD.next_practice_to / 86400 != NEW.next_practice_to / 86400
+    BEGIN
+        UPDATE practice_stats
+            SET num_words = num_words - 1
+            WHERE language_id = OLD.language_id AND direction = 1 AND
+                  level = OLD.level_to AND due_day = OLD.next_practice_to / 86400;
+        DELETE FROM practice_stats
+            WHERE language_id = OLD.language_id AND num_words = 0;
+        INSERT OR IGNORE INTO practice_stats
+            VALUES (NEW.language_id, 1, NEW.level_to,
+                    NEW.next_practice_to / 86400, 0);
+        UPDATE practice_stats
+            SET num_words = num_words + 1
+            WHERE language_id = NEW.language_id AND direction = 1 AND
+                  level = NEW.level_to AND due_day = NEW.next_practice_to / 86400;
+    END;
@@ -0,0 +1,24 @@
+-- Upgrade the Patois database schema from version 4 to version 5.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 5 adds the indexes used for paging through the words of a language
+-- in BrowseWordsActivity.
+
+CREATE INDEX words_by_sort_name ON words (language_id, name COLLATE NOCASE);
+
+CREATE INDEX words_by_timestamp ON words (language_id, timestamp);
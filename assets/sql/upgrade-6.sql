@@ -0,0 +1,112 @@
+-- Upgrade the Patois database schema from version 5 to version 6.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 6 adds the display_translations column of the words table, which
+-- is filled in below for the existing words.
+
+ALTER TABLE words ADD COLUMN display_translations TEXT NOT NULL DEFAULT '';
+
+-- The display_translations of a word are rebuilt whenever its translations
+-- change, and whenever one of its translations is renamed or moved to
+-- another language, or the code of that language changes.
+CREATE TRIGGER display_translations_on_insert AFTER INSERT ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = NEW.word_id1 AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id = NEW.word_id1;
+    END;
+
+CREATE TRIGGER display_translations_on_delete AFTER DELETE ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = OLD.word_id1 AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id = OLD.word_id1;
+    END;
+
+CREATE TRIGGER display_translations_on_update AFTER UPDATE ON translations
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (OLD.word_id1, NEW.word_id1);
+    END;
+
+CREATE TRIGGER display_translations_on_update_word
+    AFTER UPDATE OF name, language_id ON words
+    WHEN OLD.name != NEW.name OR OLD.language_id != NEW.language_id
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (SELECT word_id1 FROM translations WHERE word_id2 = NEW._id);
+    END;
+
+CREATE TRIGGER display_translations_on_update_language
+    AFTER UPDATE OF code ON languages
+    WHEN OLD.code != NEW.code
+    BEGIN
+        UPDATE words
+            SET display_translations = coalesce((
+                SELECT group_concat(
+                    replace(w.name, '.', '..') || ' .c(' ||
+                    replace(l.code, '.', '..') || ').C', '  ')
+                  FROM translations AS t, words AS w, languages AS l
+                  WHERE t.word_id1 = words._id AND
+                        t.word_id2 = w._id AND
+                        w.language_id = l._id), '')
+            WHERE _id IN (SELECT t.word_id1
+                            FROM translations AS t, words AS w
+                            WHERE t.word_id2 = w._id AND w.language_id = NEW._id);
+    END;
+
+UPDATE words
+    SET display_translations = coalesce((
+        SELECT group_concat(
+            replace(w.name, '.', '..') || ' .c(' ||
+            replace(l.code, '.', '..') || ').C', '  ')
+          FROM translations AS t, words AS w, languages AS l
+          WHERE t.word_id1 = words._id AND
+                t.word_id2 = w._id AND
+                w.language_id = l._id), '')
+    WHERE num_translations > 0;
@@ -0,0 +1,26 @@
+-- Upgrade the Patois database schema from version 6 to version 7.
+-- Copyright 2011 David Lazăr
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+--
+-- See patois.sql for the syntax conventions used by this file.
+--
+-- Version 7 makes the preference names unique, so that Database can write
+-- them with a single INSERT OR REPLACE.  Older versions could insert the
+-- same preference twice, in which case the newest row is kept.
+
+DELETE FROM preferences
+    WHERE rowid NOT IN (SELECT max(rowid) FROM preferences GROUP BY name);
+
+CREATE UNIQUE INDEX preferences_by_name ON preferences (name);
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.undef.patois.BrowseQuery;
+
+// Measures opening the unfiltered browse list, sorted by name, with each of
+// the queries Database used for it over time:
+//
+//   - groupByOpen(): the original query, which joined translations, words
+//     and languages, built the translations with group_concat() and GROUP
+//     BY, and sorted the whole result.
+//   - subqueryOpen(): the paged query (see PagedCursor), which only built
+//     the translations of the first page, with a group_concat() subquery
+//     for each word.
+//   - columnOpen(): the current paged query, which reads the translations
+//     from words.display_translations, maintained by the triggers of
+//     patois.sql.
+//
+// Opening the paged cursors counts the words and loads the first page.  The
+// original cursor had to run the whole query before returning its first
+// rows, so reading one page of it is enough.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrowseOpenBenchmark {
+    private static final int NUM_LANGUAGES = 3;
+    // Same as DatabaseBenchmark.
+    private static final long[] FAN_OUT = { 10, 50, 25, 10, 5 };
+    private static final int MAX_TRIALS = 20;
+    // Same as Database.BROWSE_WORDS_PAGE_SIZE.
+    private static final int PAGE_SIZE = 200;
+
+    // The translations column of the paged query before display_translations.
+    private static final String TRANSLATIONS_COLUMN = "w.display_translations";
+    private static final String TRANSLATIONS_SUBQUERY =
+        "(SELECT group_concat( " +
+        "    replace(w2.name, '.', '..') || ' .c(' || " +
+        "    replace(l.code, '.', '..')  || ').C', '  ') " +
+        "  FROM translations AS t, words AS w2, languages AS l " +
+        "  WHERE t.word_id1 == w._id AND " +
+        "        t.word_id2 == w2._id AND " +
+        "        w2.language_id == l._id)";
+
+    // The query of the original Database.getBrowseWordsCursor(), sorted by
+    // name, with an empty filter.
+    private static final String GROUP_BY_QUERY =
+        "SELECT " +
+        "    t.word_id1 AS _id, " +
+        "    replace(w1.name, '.', '..') AS display_name, " +
+        "    group_concat( " +
+        "      replace(w2.name, '.', '..') || ' .c(' || " +
+        "      replace(l.code, '.', '..')  || ').C', '  ') AS display_translations, " +
+        "    lower(w1.name) AS sort_name, " +
+        "    w1.timestamp AS timestamp, " +
+        "    w1.level_from AS level_from, " +
+        "    w1.next_practice_from AS next_practice_from, " +
+        "    w1.level_to AS level_to, " +
+        "    w1.next_practice_to AS next_practice_to, " +
+        "    min(w1.level_from, w1.level_to) AS sort_level, " +
+        "    min(w1.next_practice_from, w1.next_practice_to) AS sort_next_practice " +
+        "  FROM " +
+        "    translations AS t, " +
+        "    words AS w1, " +
+        "    words AS w2, " +
+        "    languages AS l " +
+        "  WHERE " +
+        "    w1.language_id == ? AND " +
+        "    ((w1.name LIKE ?) OR (w2.name LIKE ?)) AND " +
+        "    t.word_id1 == w1._id AND " +
+        "    t.word_id2 == w2._id AND " +
+        "    w2.language_id == l._id " +
+        "  GROUP BY (t.word_id1) " +
+        "UNION " +
+        "SELECT " +
+        "    w._id AS _id, " +
+        "    '.u' || replace(w.name, '.', '..') || '.U' AS display_name, " +
+        "    '.c.0.C' AS display_translations, " +
+        "    lower(w.name) AS sort_name, " +
+        "    w.timestamp AS timestamp, " +
+        "    0 AS level_from, " +
+        "    0 AS next_practice_from, " +
+        "    0 AS level_to, " +
+        "    0 AS next_practice_to, " +
+        "    0 AS sort_level, " +
+        "    0 AS sort_next_practice " +
+        "  FROM " +
+        "    words AS w " +
+        "  WHERE " +
+        "    w.language_id == ? AND " +
+        "    w.name LIKE ? AND " +
+        "    w.num_translations == 0 " +
+        "ORDER BY sort_name ASC";
+
+    @Param({ "1000", "10000", "50000" })
+    public int numWords;
+
+    private HostDatabase mDb;
+    private String mForeignLanguageId;
+    private BrowseQuery mQuery;
+    private String mSubqueryPageQuery;
+    private String[] mPageArgs;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        mDb = new HostDatabase();
+        long[] languageIds = new VocabularyGenerator(NUM_LANGUAGES, numWords, FAN_OUT,
+                                                     MAX_TRIALS, 42).generate(mDb);
+        mForeignLanguageId = Long.toString(languageIds[1]);
+        mQuery = BrowseQuery.forLanguage(mForeignLanguageId, BrowseQuery.SORT_ORDER_BY_NAME);
+
+        ArrayList<String> args = new ArrayList<String>();
+        String sql = mQuery.getPageQuery(null, 0, PAGE_SIZE, args);
+        if (!sql.contains(TRANSLATIONS_COLUMN))
+            throw new IllegalStateException("The browse query no longer reads " +
+                                            TRANSLATIONS_COLUMN);
+        mSubqueryPageQuery = sql.replace(TRANSLATIONS_COLUMN, TRANSLATIONS_SUBQUERY);
+        mPageArgs = args.toArray(new String[args.size()]);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mDb.close();
+    }
+
+    @Benchmark
+    public int groupByOpen() throws SQLException {
+        String pattern = "%%";
+        return readRows(mDb.query(GROUP_BY_QUERY, new String[] {
+            mForeignLanguageId, pattern, pattern, mForeignLanguageId, pattern,
+        }));
+    }
+
+    @Benchmark
+    public int subqueryOpen() throws SQLException {
+        return getCount() + readRows(mDb.query(mSubqueryPageQuery, mPageArgs));
+    }
+
+    @Benchmark
+    public int columnOpen() throws SQLException {
+        return getCount() + mDb.loadPage(mQuery, null, 0, PAGE_SIZE).size();
+    }
+
+    private int getCount() throws SQLException {
+        return (int) mDb.queryLong(mQuery.getCountQuery(), mQuery.getCountArgs());
+    }
+
+    // Reads up to PAGE_SIZE rows, with all their columns.
+    private static int readRows(ResultSet result) throws SQLException {
+        int numRows = 0;
+        try {
+            int numColumns = result.getMetaData().getColumnCount();
+            while (numRows < PAGE_SIZE && result.next()) {
+                for (int column = 1; column <= numColumns; column++)
+                    result.getString(column);
+                numRows++;
+            }
+        } finally {
+            result.close();
+        }
+        return numRows;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.undef.csv.CSVWriter;
+
+// Measures the throughput of CSVWriter.writeRow(), in rows per millisecond,
+// for rows like the ones written by WordsExporter.  The output is thrown
+// away, so only the formatting is measured.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVWriterBenchmark {
+    private static final String[] PLAIN_ROW = {
+        "W", "ro", "pisică", "en", "cat", "fr", "chat",
+    };
+    // Every cell needs quoting, and some of them escaped quotes.
+    private static final String[] QUOTED_ROW = {
+        "W", "en", "well, well", "ro", "\"așa\", deci", "fr", "bon,\nalors",
+    };
+
+    private CSVWriter mWriter;
+
+    @Setup
+    public void setUp() {
+        mWriter = new CSVWriter(new NullWriter());
+    }
+
+    @Benchmark
+    public void writePlainRow() throws IOException {
+        mWriter.writeRow(PLAIN_ROW);
+    }
+
+    @Benchmark
+    public void writeQuotedRow() throws IOException {
+        mWriter.writeRow(QUOTED_ROW);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.undef.csv.CSVWriter;
+import ro.undef.patois.BrowseQuery;
+import ro.undef.patois.CSVFormat;
+import ro.undef.patois.DatabaseQueries;
+import ro.undef.patois.WordIndex;
+
+// Measures the most expensive reads of Database, by running the same SQL
+// (from DatabaseQueries and BrowseQuery) against a synthetic vocabulary
+// (see VocabularyGenerator) in a HostDatabase.  The numbers come from the
+// SQLite of the host, so they're only meant for comparing the queries, not
+// for predicting the timings on a device.
+//
+// The words are spread over three languages, and the queries look at the
+// first foreign language, except for the word index, which is loaded for
+// the native language (the one the translations are picked from).
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final int NUM_LANGUAGES = 3;
+    // The relative frequency of the foreign words with 0, 1, 2... translations.
+    private static final long[] FAN_OUT = { 10, 50, 25, 10, 5 };
+    private static final int MAX_TRIALS = 20;
+    // Same as Database.BROWSE_WORDS_PAGE_SIZE.
+    private static final int PAGE_SIZE = 200;
+    // The number of pages read by browseScroll().
+    private static final int NUM_SCROLLED_PAGES = 5;
+    // Same as Database.MAX_SUGGESTIONS.
+    private static final int MAX_SUGGESTIONS = 50;
+
+    @Param({ "10000", "100000" })
+    public int numWords;
+
+    private HostDatabase mDb;
+    private String mNativeLanguageId;
+    private String mForeignLanguageId;
+    private WordIndex mWordIndex;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        mDb = new HostDatabase();
+        long[] languageIds = new VocabularyGenerator(NUM_LANGUAGES, numWords, FAN_OUT,
+                                                     MAX_TRIALS, 42).generate(mDb);
+        mNativeLanguageId = Long.toString(languageIds[0]);
+        mForeignLanguageId = Long.toString(languageIds[1]);
+        mWordIndex = loadWordIndex();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mDb.close();
+    }
+
+    // The browse list of the foreign language, in each sort order, with
+    // three kinds of filters: none, one found by the full-text index, and
+    // one which isn't (all the generated words start with a consonant), so
+    // that getBrowseWordsCursor() falls back to the substring search.
+    @State(Scope.Benchmark)
+    public static class BrowseState {
+        @Param({ "0", "1", "2", "3" })
+        public int sortOrder;
+
+        @Param({ "", "ka", "ak" })
+        public String filter;
+
+        private BrowseQuery mQuery;
+        private Object[] mFirstPageLastRow;
+
+        @Setup
+        public void setUp(DatabaseBenchmark benchmark) throws SQLException {
+            mQuery = benchmark.getBrowseQuery(filter, sortOrder);
+            ArrayList<Object[]> page = benchmark.loadPage(mQuery, null, 0);
+            mFirstPageLastRow = page.isEmpty() ? null : page.get(page.size() - 1);
+        }
+    }
+
+    // DatabaseQueries.getWordWeightsQuery(), in the "from" direction, which
+    // the samplers ran for every pick before CandidatePool.
+    @Benchmark
+    public int wordWeights() throws SQLException {
+        int numWeights = 0;
+        ResultSet result = mDb.query(DatabaseQueries.getWordWeightsQuery("_from"),
+                                     new String[] { mForeignLanguageId });
+        try {
+            while (result.next()) {
+                result.getLong(1);
+                result.getLong(2);
+                numWeights++;
+            }
+        } finally {
+            result.close();
+        }
+        return numWeights;
+    }
+
+    // Opening the cursor returned by Database.getBrowseWordsCursor(): picking
+    // the query, counting the words, and loading the first page.  See
+    // BrowseOpenBenchmark for how this compares with the earlier queries.
+    @Benchmark
+    public int browseOpen(BrowseState state) throws SQLException {
+        BrowseQuery query = getBrowseQuery(state.filter, state.sortOrder);
+        int count = getCount(query);
+        return count + loadPage(query, null, 0).size();
+    }
+
+    // Scrolling through the browse list, which loads the pages following the
+    // first one using the sort keys of the previous page.
+    @Benchmark
+    public int browseScroll(BrowseState state) throws SQLException {
+        int numRows = 0;
+        Object[] lastRow = state.mFirstPageLastRow;
+        for (int i = 0; i < NUM_SCROLLED_PAGES && lastRow != null; i++) {
+            ArrayList<Object[]> page = loadPage(state.mQuery, lastRow, 0);
+            numRows += page.size();
+            lastRow = page.isEmpty() ? null : page.get(page.size() - 1);
+        }
+        return numRows;
+    }
+
+    // The first call to Database.getWordsCursor() for a language, which
+    // loads its WordIndex.
+    @Benchmark
+    public WordIndex wordIndexLoad() throws SQLException {
+        return loadWordIndex();
+    }
+
+    // The following calls to Database.getWordsCursor(), for a two-letter
+    // prefix.
+    @Benchmark
+    public int wordIndexFind() {
+        return mWordIndex.find("ka", -1, MAX_SUGGESTIONS).size();
+    }
+
+    // WordsExporter writing all the languages and words to a CSV file, minus
+    // the I/O.
+    @Benchmark
+    public int export() throws IOException, SQLException {
+        CSVWriter csvOut = new CSVWriter(new NullWriter());
+        int numRows = 0;
+
+        ResultSet result = mDb.query(DatabaseQueries.LANGUAGES_QUERY, null);
+        try {
+            String[] fields = new String[3];
+            fields[0] = CSVFormat.LANGUAGE_TAG;
+            while (result.next()) {
+                fields[1] = result.getString(2);
+                fields[2] = result.getString(3);
+                csvOut.writeRow(fields);
+                numRows++;
+            }
+        } finally {
+            result.close();
+        }
+
+        // Like WordsExporter.writeWords().
+        result = mDb.query(DatabaseQueries.EXPORT_WORDS_QUERY, null);
+        try {
+            ArrayList<String> fields = new ArrayList<String>();
+            long wordId = -1;
+            while (result.next()) {
+                long id = result.getLong(1);
+                if (id != wordId) {
+                    if (wordId != -1) {
+                        csvOut.writeRow(fields.toArray(new String[fields.size()]));
+                        numRows++;
+                    }
+
+                    wordId = id;
+                    fields.clear();
+                    fields.add(CSVFormat.WORD_TAG);
+                    fields.add(result.getString(2));
+                    fields.add(result.getString(3));
+                }
+
+                String translation = result.getString(5);
+                if (translation != null) {
+                    fields.add(result.getString(4));
+                    fields.add(translation);
+                }
+            }
+            if (wordId != -1) {
+                csvOut.writeRow(fields.toArray(new String[fields.size()]));
+                numRows++;
+            }
+        } finally {
+            result.close();
+        }
+
+        return numRows;
+    }
+
+    // Like Database.getBrowseWordsCursor().
+    BrowseQuery getBrowseQuery(String filter, int sortOrder) throws SQLException {
+        BrowseQuery query = BrowseQuery.forPrefixMatch(mForeignLanguageId, filter, sortOrder);
+        if (query != null && getCount(query) > 0)
+            return query;
+
+        if (filter.length() > 0)
+            return BrowseQuery.forSubstring(mForeignLanguageId, filter, sortOrder);
+
+        return BrowseQuery.forLanguage(mForeignLanguageId, sortOrder);
+    }
+
+    private int getCount(BrowseQuery query) throws SQLException {
+        return (int) mDb.queryLong(query.getCountQuery(), query.getCountArgs());
+    }
+
+    ArrayList<Object[]> loadPage(BrowseQuery query, Object[] lastRow, int offset)
+            throws SQLException {
+        return mDb.loadPage(query, lastRow, offset, PAGE_SIZE);
+    }
+
+    private WordIndex loadWordIndex() throws SQLException {
+        HashMap<Long, String> names = new HashMap<Long, String>();
+
+        ResultSet result = mDb.query(DatabaseQueries.WORD_INDEX_QUERY,
+                                     new String[] { mNativeLanguageId });
+        try {
+            while (result.next())
+                names.put(result.getLong(1), result.getString(2));
+        } finally {
+            result.close();
+        }
+
+        WordIndex index = new WordIndex();
+        index.addAll(names);
+        return index;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import ro.undef.patois.BrowseQuery;
+import ro.undef.patois.DatabaseQueries;
+
+// A Patois database in a temporary file on the host, accessed through JDBC
+// (with the sqlite-jdbc driver), for running the queries of
+// DatabaseQueries and BrowseQuery outside of Android.  The schema is
+// created from assets/sql/patois.sql, like Database does on the device.
+//
+// The benchmarks are run from the top directory of the sources, so that's
+// where the schema is looked up.
+
+public class HostDatabase {
+    private static final String SCHEMA_FILE = "assets/sql/patois.sql";
+
+    private File mFile;
+    private Connection mConnection;
+
+    public HostDatabase() throws IOException, SQLException {
+        mFile = File.createTempFile("patois-bench.", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getPath());
+
+        // Like Database.DatabaseHelper.onOpen().
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute("PRAGMA journal_mode = WAL");
+        } finally {
+            statement.close();
+        }
+
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(SCHEMA_FILE), "UTF-8"));
+        try {
+            runInTransaction(DatabaseQueries.readStatements(in).toArray(new String[0]));
+        } finally {
+            in.close();
+        }
+    }
+
+    public Connection getConnection() {
+        return mConnection;
+    }
+
+    // Runs the statements in a single transaction.
+    public void runInTransaction(String[] sqls) throws SQLException {
+        mConnection.setAutoCommit(false);
+        Statement statement = mConnection.createStatement();
+        try {
+            for (String sql : sqls)
+                statement.execute(sql);
+            mConnection.commit();
+        } finally {
+            statement.close();
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    // Runs a query, binding all the arguments as text, like
+    // SQLiteDatabase.rawQuery() does.  Closing the result also closes the
+    // statement.
+    public ResultSet query(String sql, String[] args) throws SQLException {
+        PreparedStatement statement = mConnection.prepareStatement(sql);
+        if (args != null) {
+            for (int i = 0; i < args.length; i++)
+                statement.setString(i + 1, args[i]);
+        }
+        statement.closeOnCompletion();
+        return statement.executeQuery();
+    }
+
+    // Returns the first column of the first row returned by the query.
+    public long queryLong(String sql, String[] args) throws SQLException {
+        ResultSet result = query(sql, args);
+        try {
+            return result.next() ? result.getLong(1) : 0;
+        } finally {
+            result.close();
+        }
+    }
+
+    // Reads a page of the browse list like PagedCursor does, returning the
+    // rows as arrays of BrowseQuery.COLUMNS.
+    public ArrayList<Object[]> loadPage(BrowseQuery query, Object[] lastRow, int offset,
+                                        int limit) throws SQLException {
+        ArrayList<String> args = new ArrayList<String>();
+        String sql = query.getPageQuery(lastRow, offset, limit, args);
+        ArrayList<Object[]> page = new ArrayList<Object[]>();
+
+        ResultSet result = query(sql, args.toArray(new String[args.size()]));
+        try {
+            int numColumns = BrowseQuery.COLUMNS.length;
+            while (result.next()) {
+                Object[] row = new Object[numColumns];
+                for (int column = 0; column < numColumns; column++) {
+                    if (BrowseQuery.TEXT_COLUMNS[column])
+                        row[column] = result.getString(column + 1);
+                    else
+                        row[column] = result.getLong(column + 1);
+                    if (result.wasNull())
+                        row[column] = null;
+                }
+                page.add(row);
+            }
+        } finally {
+            result.close();
+        }
+
+        return page;
+    }
+
+    // Closes and deletes the database.
+    public void close() throws SQLException {
+        mConnection.close();
+        mFile.delete();
+        new File(mFile.getPath() + "-wal").delete();
+        new File(mFile.getPath() + "-shm").delete();
+    }
+}
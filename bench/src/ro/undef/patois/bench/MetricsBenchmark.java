@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.undef.patois.DatabaseMetrics;
+
+// Measures what DatabaseMetrics adds to each Database call, with the
+// recording turned off (the default) and on.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({ "false", "true" })
+    public boolean enabled;
+
+    @Setup
+    public void setUp() {
+        DatabaseMetrics.setEnabled(enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DatabaseMetrics.setEnabled(false);
+        DatabaseMetrics.reset();
+    }
+
+    @Benchmark
+    public void startAndEnd() {
+        long start = DatabaseMetrics.start();
+        DatabaseMetrics.end("getWordWeights", start, 10);
+    }
+}
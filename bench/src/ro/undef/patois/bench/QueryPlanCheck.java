@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import ro.undef.patois.BrowseQuery;
+import ro.undef.patois.DatabaseQueries;
+
+// Checks that the heaviest queries of Database still use the indexes of
+// assets/sql/patois.sql, by running EXPLAIN QUERY PLAN on them in a
+// HostDatabase filled by VocabularyGenerator:
+//
+//   - The word weights (the baseline of CandidatePool) and the word index
+//     are read from covering indexes.
+//   - The browse pages (the first one, and the following ones, which are
+//     loaded with the sort keys of the previous page) are read in the order
+//     of an index, except for the "by score" order, whose sort keys are
+//     computed.
+//   - None of them scans the words table.
+//
+// The plans come from the SQLite of the host, which may be newer than the
+// one on the devices, so this catches a query or schema change that loses
+// an index, not every difference between SQLite versions.
+//
+// Run by "ant -f core.xml check", which fails if this throws.
+
+public class QueryPlanCheck {
+    private static final int NUM_WORDS = 3000;
+    private static final int PAGE_SIZE = 200;
+
+    private HostDatabase mDb;
+    private String mNativeLanguageId;
+    private String mForeignLanguageId;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        QueryPlanCheck check = new QueryPlanCheck();
+        try {
+            check.checkPracticeQueries();
+            check.checkBrowseQueries();
+        } finally {
+            check.close();
+        }
+        System.out.println("QueryPlanCheck: OK");
+    }
+
+    private QueryPlanCheck() throws IOException, SQLException {
+        mDb = new HostDatabase();
+        long[] languageIds = new VocabularyGenerator(3, NUM_WORDS, new long[] { 10, 50, 25 },
+                                                     5, 42).generate(mDb);
+        mNativeLanguageId = Long.toString(languageIds[0]);
+        mForeignLanguageId = Long.toString(languageIds[1]);
+    }
+
+    private void close() throws SQLException {
+        mDb.close();
+    }
+
+    private void checkPracticeQueries() throws SQLException {
+        String[] args = new String[] { mForeignLanguageId };
+        checkPlan("word weights from", DatabaseQueries.getWordWeightsQuery("_from"), args,
+                  "USING COVERING INDEX words_by_practice_from", false);
+        checkPlan("word weights to", DatabaseQueries.getWordWeightsQuery("_to"), args,
+                  "USING COVERING INDEX words_by_practice_to", false);
+        checkPlan("word index", DatabaseQueries.WORD_INDEX_QUERY,
+                  new String[] { mNativeLanguageId }, "USING COVERING INDEX", false);
+    }
+
+    private void checkBrowseQueries() throws SQLException {
+        checkBrowseQuery("by name", BrowseQuery.SORT_ORDER_BY_NAME,
+                         "USING INDEX words_by_sort_name", false);
+        checkBrowseQuery("by score", BrowseQuery.SORT_ORDER_BY_SCORE, "USING INDEX", true);
+        checkBrowseQuery("newest first", BrowseQuery.SORT_ORDER_NEWEST_FIRST,
+                         "USING INDEX words_by_timestamp", false);
+        checkBrowseQuery("oldest first", BrowseQuery.SORT_ORDER_OLDEST_FIRST,
+                         "USING INDEX words_by_timestamp", false);
+    }
+
+    private void checkBrowseQuery(String name, int sortOrder, String index, boolean sorts)
+            throws SQLException {
+        BrowseQuery query = BrowseQuery.forLanguage(mForeignLanguageId, sortOrder);
+
+        ArrayList<String> args = new ArrayList<String>();
+        String sql = query.getPageQuery(null, 0, PAGE_SIZE, args);
+        checkPlan("browse " + name, sql, args.toArray(new String[args.size()]),
+                  index, sorts);
+
+        ArrayList<Object[]> page = mDb.loadPage(query, null, 0, PAGE_SIZE);
+        if (page.size() != PAGE_SIZE)
+            throw new AssertionError("browse " + name + ": the first page is not full");
+
+        args.clear();
+        sql = query.getPageQuery(page.get(page.size() - 1), 0, PAGE_SIZE, args);
+        checkPlan("browse " + name + ", next page", sql,
+                  args.toArray(new String[args.size()]), index, sorts);
+    }
+
+    // Throws if the plan of the query doesn't mention index, if it scans a
+    // table, or if it sorts the rows (unless sorts is true).
+    private void checkPlan(String name, String sql, String[] args, String index,
+                           boolean sorts) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        ResultSet result = mDb.query("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            while (result.next())
+                plan.append("    ").append(result.getString("detail")).append('\n');
+        } finally {
+            result.close();
+        }
+
+        System.out.print(name + ":\n" + plan);
+
+        String details = plan.toString();
+        // The index name is followed by the columns it's searched on.
+        if (!details.contains(index + " "))
+            throw new AssertionError(name + ": the query doesn't use " + index);
+        if (details.contains("SCAN "))
+            throw new AssertionError(name + ": the query scans a table");
+        if (!sorts && details.contains("TEMP B-TREE"))
+            throw new AssertionError(name + ": the query sorts the rows");
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.util.HashSet;
+import java.util.Set;
+import ro.undef.patois.AliasTable;
+import ro.undef.patois.CandidatePool;
+import ro.undef.patois.Random;
+
+// Checks that AliasTable and CandidatePool draw the words with the right
+// probabilities: each of them draws NUM_DRAWS times from a fixed set of
+// weights, and the counts are compared with the expected ones with a
+// chi-square test.  The random number generators are seeded, so the outcome
+// is the same on every run; a failure means that the sampling is biased,
+// not that the test was unlucky.
+//
+// Run by "ant -f core.xml check", which fails if this throws.
+
+public class SamplingCheck {
+    private static final int NUM_DRAWS = 1000000;
+    private static final long SEED = 42;
+    // The critical value is taken at p = 0.0001.
+    private static final double CRITICAL_Z = 3.719;
+
+    private static final long NOW = 1300000000;
+    private static final long ONE_DAY = 24 * 60 * 60;
+
+    // Includes a few zero weights, which must never be drawn.
+    private static final long[] WEIGHTS = {
+        1, 2, 3, 0, 5, 8, 13, 21, 34, 55, 89, 0, 144, 1000, 1, 1,
+    };
+
+    public static void main(String[] args) {
+        checkAliasTable();
+        checkCandidatePool();
+        checkCandidatePoolBatches();
+        System.out.println("SamplingCheck: OK");
+    }
+
+    private static void checkAliasTable() {
+        Random random = new Random();
+        random.setSeed(SEED);
+
+        AliasTable table = new AliasTable(WEIGHTS);
+        long[] counts = new long[WEIGHTS.length];
+        for (int i = 0; i < NUM_DRAWS; i++)
+            counts[table.next(random)]++;
+
+        checkCounts("AliasTable", WEIGHTS, counts);
+    }
+
+    // The words of WEIGHTS are overdue by their weight (in days, so the
+    // counts are the same as for the alias table, scaled).  Two more words
+    // are not candidates: one isn't due yet, and one was practiced less
+    // than CandidatePool.MIN_PRACTICE_GAP ago.
+    private static CandidatePool buildPool() {
+        CandidatePool pool = new CandidatePool();
+        for (int i = 0; i < WEIGHTS.length; i++)
+            pool.put(i, NOW - WEIGHTS[i] * ONE_DAY, 0);
+        pool.put(WEIGHTS.length, NOW + ONE_DAY, 0);
+        pool.put(WEIGHTS.length + 1, NOW - ONE_DAY, NOW - 60);
+        return pool;
+    }
+
+    private static void checkCandidatePool() {
+        Random random = new Random();
+        random.setSeed(SEED);
+
+        CandidatePool pool = buildPool();
+        long[] weights = new long[WEIGHTS.length + 2];
+        for (int i = 0; i < WEIGHTS.length; i++)
+            weights[i] = WEIGHTS[i] * ONE_DAY;
+
+        long[] counts = new long[weights.length];
+        for (int i = 0; i < NUM_DRAWS; i++)
+            counts[(int) pool.select(NOW, random)]++;
+
+        checkCounts("CandidatePool.select()", weights, counts);
+    }
+
+    // The batches must be made of distinct candidates, other than the
+    // excluded ones, and the first word of each batch is a plain weighted
+    // draw.
+    private static void checkCandidatePoolBatches() {
+        Random random = new Random();
+        random.setSeed(SEED);
+
+        CandidatePool pool = buildPool();
+        Set<Long> excluded = new HashSet<Long>();
+        excluded.add(13L);
+
+        long[] weights = new long[WEIGHTS.length + 2];
+        for (int i = 0; i < WEIGHTS.length; i++)
+            weights[i] = excluded.contains((long) i) ? 0 : WEIGHTS[i] * ONE_DAY;
+
+        long[] counts = new long[weights.length];
+        for (int i = 0; i < NUM_DRAWS / 10; i++) {
+            long[] batch = pool.select(NOW, random, 8, excluded);
+            if (batch.length != 8)
+                throw new AssertionError("CandidatePool: short batch of " + batch.length);
+
+            Set<Long> seen = new HashSet<Long>();
+            for (long wordId : batch) {
+                if (weights[(int) wordId] == 0)
+                    throw new AssertionError("CandidatePool: drew non-candidate " + wordId);
+                if (!seen.add(wordId))
+                    throw new AssertionError("CandidatePool: drew " + wordId + " twice");
+            }
+            counts[(int) batch[0]]++;
+        }
+
+        checkCounts("CandidatePool.select() batches", weights, counts);
+    }
+
+    // Throws if a word with no weight was drawn, or if the counts are too
+    // far from being proportional to the weights.
+    private static void checkCounts(String name, long[] weights, long[] counts) {
+        long totalWeight = 0;
+        long numDraws = 0;
+        for (int i = 0; i < weights.length; i++) {
+            totalWeight += weights[i];
+            numDraws += counts[i];
+        }
+
+        double chiSquare = 0;
+        int numCategories = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] == 0) {
+                if (counts[i] != 0)
+                    throw new AssertionError(name + ": drew " + i + ", which has no weight");
+                continue;
+            }
+
+            double expected = (double) numDraws * weights[i] / totalWeight;
+            chiSquare += (counts[i] - expected) * (counts[i] - expected) / expected;
+            numCategories++;
+        }
+
+        double critical = getCriticalValue(numCategories - 1);
+        System.out.println(String.format("%s: chi-square %.2f (critical value %.2f)",
+                                         name, chiSquare, critical));
+        if (chiSquare > critical)
+            throw new AssertionError(name + ": the draws don't follow the weights");
+    }
+
+    // The Wilson-Hilferty approximation of the chi-square quantile with the
+    // given degrees of freedom, for the normal quantile CRITICAL_Z.
+    private static double getCriticalValue(int degrees) {
+        double k = 2.0 / (9.0 * degrees);
+        double x = 1.0 - k + CRITICAL_Z * Math.sqrt(k);
+        return degrees * x * x * x;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.undef.patois.AliasTable;
+import ro.undef.patois.CandidatePool;
+import ro.undef.patois.Random;
+
+// Measures picking words for practice, as done by Trainer.selectWord() and
+// Trainer.selectWords(), for languages of various sizes.  The words are all
+// overdue, so they're all candidates: either by up to 30 days ("spread"), or
+// by up to an hour, except for a single word which is 30 days overdue
+// ("skewed").
+//
+// rejectionSelect() is the rejection sampling loop which Trainer used before
+// the samplers, kept as a baseline.  Its number of attempts grows with the
+// ratio between the largest and the average weight, so it's much slower on
+// the skewed weights.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectWordBenchmark {
+    private static final long ONE_HOUR = 60 * 60;
+    private static final long ONE_DAY = 24 * ONE_HOUR;
+    // The number of words selected at a time by PracticeSession.
+    private static final int BATCH_SIZE = 8;
+
+    @Param({ "1000", "10000", "100000" })
+    public int numWeights;
+
+    @Param({ "spread", "skewed" })
+    public String distribution;
+
+    private long mNow;
+    private Random mRandom;
+    private CandidatePool mPool;
+    private long[] mWeights;
+    private AliasTable mAliasTable;
+    private Set<Long> mNoExcludedWords;
+
+    @Setup
+    public void setUp() {
+        mNow = 1300000000;
+        mRandom = new Random();
+        mRandom.setSeed(42);
+
+        mPool = new CandidatePool();
+        mWeights = new long[numWeights];
+        boolean skewed = distribution.equals("skewed");
+        for (int i = 0; i < numWeights; i++) {
+            long maxDelay = (skewed && i > 0) ? ONE_HOUR : 30 * ONE_DAY;
+            long nextPractice = mNow - 1 - mRandom.nextLong(maxDelay);
+            if (skewed && i == 0)
+                nextPractice = mNow - 30 * ONE_DAY;
+            mPool.put(i, nextPractice, 0);
+            mWeights[i] = mNow - nextPractice;
+        }
+        mAliasTable = new AliasTable(mWeights);
+        mNoExcludedWords = Collections.emptySet();
+    }
+
+    // A single draw from the CandidatePool (PoolSampler, the default).
+    @Benchmark
+    public long poolSelect() {
+        return mPool.select(mNow, mRandom);
+    }
+
+    // A batch of distinct words, as drawn by PracticeSession.
+    @Benchmark
+    public long[] poolSelectBatch() {
+        return mPool.select(mNow, mRandom, BATCH_SIZE, mNoExcludedWords);
+    }
+
+    // A single draw from an AliasTable which was already built.
+    @Benchmark
+    public int aliasTableNext() {
+        return mAliasTable.next(mRandom);
+    }
+
+    // A single draw by an AliasTable built over the weights for that draw,
+    // as done by the AliasSampler which preceded CandidatePool.
+    @Benchmark
+    public int aliasSelect() {
+        return new AliasTable(mWeights).next(mRandom);
+    }
+
+    // A single draw by the rejection sampling loop of the original
+    // Trainer.selectWord(), given the same weights as aliasSelect().
+    @Benchmark
+    public int rejectionSelect() {
+        int numWeights = mWeights.length;
+        long maxWeight = -1;
+        long totalWeight = 0;
+        for (long weight : mWeights) {
+            totalWeight += weight;
+            if (weight > maxWeight)
+                maxWeight = weight;
+        }
+
+        // Twice the expected number of attempts, falling back to the
+        // heaviest word seen.
+        int numAttempts = (int) (2L * maxWeight * numWeights / totalWeight + 1);
+        int best = -1;
+        while (numAttempts --> 0) {
+            int picked = mRandom.nextInt(numWeights);
+            if (mRandom.nextLong(maxWeight) < mWeights[picked])
+                return picked;
+
+            if (best == -1 || mWeights[best] < mWeights[picked])
+                best = picked;
+        }
+
+        return best;
+    }
+}
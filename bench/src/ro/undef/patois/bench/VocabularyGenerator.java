@@ -0,0 +1,270 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import ro.undef.patois.AliasTable;
+import ro.undef.patois.PracticeSchedule;
+import ro.undef.patois.Random;
+
+// Fills a HostDatabase with a synthetic vocabulary, shaped like the one of
+// someone learning a few languages:
+//
+//   - Language 0 is the native language, and languages 1 to N-1 are the
+//     foreign languages being learned.  The words are spread evenly over
+//     the languages.
+//
+//   - Each foreign word is translated by a number of native words, drawn
+//     from the fan-out distribution: fanOut[k] is the relative frequency of
+//     the foreign words with k translations.  As in Patois, translations
+//     go both ways, so the native words end up with the translations of
+//     all the foreign words pointing at them.  With a single language, the
+//     words are translated by other words of the same language.
+//
+//   - The words were added over the last year, and the translated foreign
+//     words have been practiced since then, in both directions, up to
+//     maxTrials times each.  Each trial is recorded in practice_log, and
+//     the practice columns of the words reflect the outcome of the last
+//     one, following PracticeSchedule.
+//
+// The vocabulary only depends on the parameters and the seed, so the
+// benchmarks always run against the same data.
+
+public class VocabularyGenerator {
+    private static final long ONE_DAY = 24 * 60 * 60;
+    private static final long HISTORY = 365 * ONE_DAY;
+    // The chance of answering a trial correctly, in percent.
+    private static final int SUCCESS_RATE = 80;
+    // See Trainer.TRAINER_VERSION.
+    private static final int TRAINER_VERSION = 0;
+
+    private static final String[] CONSONANTS = {
+        "b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s",
+        "ș", "t", "ț", "v", "z", "ch", "st",
+    };
+    private static final String[] VOWELS = {
+        "a", "e", "i", "o", "u", "ă", "â", "î", "ea", "ie",
+    };
+
+    private int mNumLanguages;
+    private int mNumWords;
+    private AliasTable mFanOut;
+    private int mMaxTrials;
+    private Random mRandom;
+
+    public VocabularyGenerator(int numLanguages, int numWords, long[] fanOut,
+                               int maxTrials, long seed) {
+        mNumLanguages = numLanguages;
+        mNumWords = numWords;
+        mFanOut = new AliasTable(fanOut);
+        mMaxTrials = maxTrials;
+        mRandom = new Random();
+        mRandom.setSeed(seed);
+    }
+
+    // Adds the vocabulary to db, which must be empty.  Returns the IDs of
+    // the languages.
+    public long[] generate(HostDatabase db) throws SQLException {
+        Connection connection = db.getConnection();
+        connection.setAutoCommit(false);
+        try {
+            long[] languageIds = insertLanguages(connection);
+            // The IDs of the words of each language.
+            ArrayList<ArrayList<Long>> words = new ArrayList<ArrayList<Long>>();
+            for (int i = 0; i < mNumLanguages; i++)
+                words.add(new ArrayList<Long>());
+
+            long now = System.currentTimeMillis() / 1000;
+            PreparedStatement insertWord = connection.prepareStatement(
+                    "INSERT INTO words (" +
+                    "    name, language_id, timestamp, " +
+                    "    level_from, last_practice_from, next_practice_from, " +
+                    "    level_to, last_practice_to, next_practice_to" +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            PreparedStatement insertTranslation = connection.prepareStatement(
+                    "INSERT OR IGNORE INTO translations (word_id1, word_id2) VALUES (?, ?)");
+            PreparedStatement insertTrial = connection.prepareStatement(
+                    "INSERT INTO practice_log (" +
+                    "    trainer, word_id, direction, successful, timestamp" +
+                    ") VALUES (?, ?, ?, ?, ?)");
+            try {
+                // The native words come first, so the foreign words have
+                // something to be translated by.
+                int numNativeWords = mNumWords / mNumLanguages;
+                for (int i = 0; i < mNumWords; i++) {
+                    int language = (i < numNativeWords) ? 0 : 1 + i % (mNumLanguages - 1);
+                    boolean isForeign = language != 0 || mNumLanguages == 1;
+                    int numTranslations = isForeign ? mFanOut.next(mRandom) : 0;
+                    ArrayList<Long> translatedBy = words.get(0);
+                    if (translatedBy.isEmpty())
+                        numTranslations = 0;
+
+                    long timestamp = now - mRandom.nextLong(HISTORY);
+                    Practice from = new Practice(timestamp);
+                    Practice to = new Practice(timestamp);
+                    if (numTranslations > 0) {
+                        from.simulate(now);
+                        to.simulate(now);
+                    }
+
+                    insertWord.setString(1, getRandomName());
+                    insertWord.setLong(2, languageIds[language]);
+                    insertWord.setLong(3, timestamp);
+                    insertWord.setInt(4, from.level);
+                    insertWord.setLong(5, from.lastPractice);
+                    insertWord.setLong(6, from.nextPractice);
+                    insertWord.setInt(7, to.level);
+                    insertWord.setLong(8, to.lastPractice);
+                    insertWord.setLong(9, to.nextPractice);
+                    insertWord.executeUpdate();
+                    long wordId = getGeneratedId(insertWord);
+                    words.get(language).add(wordId);
+
+                    for (int j = 0; j < numTranslations; j++) {
+                        long translationId =
+                            translatedBy.get((int) mRandom.nextLong(translatedBy.size()));
+                        if (translationId == wordId)
+                            continue;
+                        insertTranslation.setLong(1, wordId);
+                        insertTranslation.setLong(2, translationId);
+                        insertTranslation.executeUpdate();
+                        insertTranslation.setLong(1, translationId);
+                        insertTranslation.setLong(2, wordId);
+                        insertTranslation.executeUpdate();
+                    }
+
+                    from.log(insertTrial, wordId, 0);
+                    to.log(insertTrial, wordId, 1);
+                    insertTrial.executeBatch();
+                }
+            } finally {
+                insertWord.close();
+                insertTranslation.close();
+                insertTrial.close();
+            }
+
+            connection.commit();
+            return languageIds;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private long[] insertLanguages(Connection connection) throws SQLException {
+        long[] ids = new long[mNumLanguages];
+
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO languages (code, name) VALUES (?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+        try {
+            for (int i = 0; i < mNumLanguages; i++) {
+                insert.setString(1, "l" + i);
+                insert.setString(2, "Language " + i);
+                insert.executeUpdate();
+                ids[i] = getGeneratedId(insert);
+            }
+        } finally {
+            insert.close();
+        }
+
+        return ids;
+    }
+
+    private static long getGeneratedId(PreparedStatement statement) throws SQLException {
+        ResultSet keys = statement.getGeneratedKeys();
+        try {
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            keys.close();
+        }
+    }
+
+    // Returns a word of one to four syllables.
+    private String getRandomName() {
+        StringBuilder name = new StringBuilder();
+        int numSyllables = 1 + (int) mRandom.nextLong(4);
+        for (int i = 0; i < numSyllables; i++) {
+            name.append(CONSONANTS[(int) mRandom.nextLong(CONSONANTS.length)]);
+            name.append(VOWELS[(int) mRandom.nextLong(VOWELS.length)]);
+        }
+        return name.toString();
+    }
+
+    // The practice history of a word in one direction.
+    private class Practice {
+        public int level;
+        public long lastPractice;
+        public long nextPractice;
+        // The timestamps of the trials, and whether they were successful.
+        private ArrayList<Long> mTrials;
+        private ArrayList<Boolean> mSuccessful;
+
+        public Practice(long timestamp) {
+            level = 0;
+            lastPractice = 0;
+            nextPractice = PracticeSchedule.scheduleNextPractice(timestamp, 0);
+            mTrials = new ArrayList<Long>();
+            mSuccessful = new ArrayList<Boolean>();
+        }
+
+        // Practices the word whenever it's due (give or take a few days),
+        // like Trainer.updatePracticeInfo() would, until now or until
+        // maxTrials trials were made.
+        public void simulate(long now) {
+            int numTrials = (int) mRandom.nextLong(mMaxTrials + 1);
+            long time = nextPractice;
+            for (int i = 0; i < numTrials; i++) {
+                time += mRandom.nextLong(3 * ONE_DAY);
+                if (time >= now)
+                    break;
+
+                boolean successful = mRandom.nextLong(100) < SUCCESS_RATE;
+                if (successful) {
+                    nextPractice = PracticeSchedule.scheduleNextPractice(time, level);
+                    level++;
+                } else {
+                    level = 0;
+                }
+                lastPractice = time;
+                mTrials.add(time);
+                mSuccessful.add(successful);
+
+                time = Math.max(time, nextPractice);
+            }
+        }
+
+        // Adds the trials to the batch of insertTrial.
+        public void log(PreparedStatement insertTrial, long wordId, int direction)
+                throws SQLException {
+            for (int i = 0; i < mTrials.size(); i++) {
+                insertTrial.setInt(1, TRAINER_VERSION);
+                insertTrial.setLong(2, wordId);
+                insertTrial.setInt(3, direction);
+                insertTrial.setInt(4, mSuccessful.get(i) ? 1 : 0);
+                insertTrial.setLong(5, mTrials.get(i));
+                insertTrial.addBatch();
+            }
+        }
+    }
+}
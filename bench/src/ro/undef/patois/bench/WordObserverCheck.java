@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois.bench;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import ro.undef.patois.WordChanges;
+import ro.undef.patois.WordObserver;
+
+// Checks that editing a word reaches the registered WordObservers the way
+// Database reports it: the edit of EditWordActivity (renaming a word and
+// adding a translation, in a single transaction) is recorded in a
+// WordChanges, which is run once the transaction commits.  The observers
+// must hear about each word once, only after the commit, and must see the
+// new values when they read the word back.
+//
+// Run by "ant -f core.xml check", which fails if this throws.
+
+public class WordObserverCheck {
+    private HostDatabase mDb;
+    // The notifications received so far, as "changed <id> <name>" or
+    // "deleted <id>".
+    private ArrayList<String> mEvents;
+    private WordObserver mObserver;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        WordObserverCheck check = new WordObserverCheck();
+        try {
+            check.checkEdit();
+            check.checkRollback();
+            check.checkDelete();
+            check.checkUnregister();
+        } finally {
+            check.close();
+        }
+        System.out.println("WordObserverCheck: OK");
+    }
+
+    private WordObserverCheck() throws IOException, SQLException {
+        mDb = new HostDatabase();
+        new VocabularyGenerator(2, 100, new long[] { 0, 1 }, 0, 42).generate(mDb);
+
+        mEvents = new ArrayList<String>();
+        mObserver = new WordObserver() {
+            public void onWordChanged(long wordId) {
+                mEvents.add("changed " + wordId + " " + getName(wordId));
+            }
+
+            public void onWordDeleted(long wordId) {
+                mEvents.add("deleted " + wordId);
+            }
+        };
+        WordChanges.registerObserver(mObserver);
+    }
+
+    private void close() throws SQLException {
+        WordChanges.unregisterObserver(mObserver);
+        mDb.close();
+    }
+
+    private void checkEdit() throws SQLException {
+        long wordId = getWordId(0);
+        long translationId = getWordId(1);
+        WordChanges changes = new WordChanges();
+
+        Connection connection = mDb.getConnection();
+        connection.setAutoCommit(false);
+        try {
+            update("UPDATE words SET name = ? WHERE _id == ?", "edited", wordId);
+            changes.wordChanged(wordId);
+            update("INSERT OR IGNORE INTO translations (word_id1, word_id2) VALUES (?, ?)",
+                   wordId, translationId);
+            update("INSERT OR IGNORE INTO translations (word_id1, word_id2) VALUES (?, ?)",
+                   translationId, wordId);
+            changes.wordChanged(wordId);
+            changes.wordChanged(translationId);
+
+            expectEvents("before the commit");
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        changes.run();
+
+        expectEvents("edit",
+                     "changed " + wordId + " edited",
+                     "changed " + translationId + " " + getName(translationId));
+    }
+
+    // Database drops the WordChanges of a transaction which is rolled back,
+    // so nothing is reported.
+    private void checkRollback() throws SQLException {
+        long wordId = getWordId(2);
+        String name = getName(wordId);
+        WordChanges changes = new WordChanges();
+
+        Connection connection = mDb.getConnection();
+        connection.setAutoCommit(false);
+        try {
+            update("UPDATE words SET name = ? WHERE _id == ?", "rolled back", wordId);
+            changes.wordChanged(wordId);
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        expectEvents("rollback");
+        if (!name.equals(getName(wordId)))
+            throw new AssertionError("rollback: the name was changed");
+    }
+
+    private void checkDelete() throws SQLException {
+        long wordId = getWordId(3);
+        WordChanges changes = new WordChanges();
+
+        update("UPDATE words SET name = ? WHERE _id == ?", "deleted soon", wordId);
+        changes.wordChanged(wordId);
+        update("DELETE FROM words WHERE _id == ?", wordId);
+        changes.wordDeleted(wordId);
+        changes.run();
+
+        expectEvents("delete", "deleted " + wordId);
+    }
+
+    private void checkUnregister() throws SQLException {
+        long wordId = getWordId(4);
+        WordChanges changes = new WordChanges();
+
+        WordChanges.unregisterObserver(mObserver);
+        try {
+            update("UPDATE words SET name = ? WHERE _id == ?", "unobserved", wordId);
+            changes.wordChanged(wordId);
+            changes.run();
+            expectEvents("unregistered observer");
+        } finally {
+            WordChanges.registerObserver(mObserver);
+        }
+    }
+
+    // Throws unless the events received since the last call are the
+    // expected ones, in order.
+    private void expectEvents(String name, String... expected) {
+        ArrayList<String> events = new ArrayList<String>(mEvents);
+        mEvents.clear();
+
+        System.out.println(name + ": " + events);
+        if (events.size() != expected.length)
+            throw new AssertionError(name + ": got " + events);
+        for (int i = 0; i < expected.length; i++) {
+            if (!events.get(i).equals(expected[i]))
+                throw new AssertionError(name + ": got " + events.get(i) +
+                                         " instead of " + expected[i]);
+        }
+    }
+
+    // Returns the ID of the n-th word, in the order of their IDs.
+    private long getWordId(int n) throws SQLException {
+        return mDb.queryLong("SELECT _id FROM words ORDER BY _id LIMIT 1 OFFSET ?",
+                             new String[] { Integer.toString(n) });
+    }
+
+    private String getName(long wordId) {
+        try {
+            ResultSet result = mDb.query("SELECT name FROM words WHERE _id == ?",
+                                         new String[] { Long.toString(wordId) });
+            try {
+                return result.next() ? result.getString(1) : null;
+            } finally {
+                result.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void update(String sql, Object... args) throws SQLException {
+        PreparedStatement statement = mDb.getConnection().prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++)
+                statement.setObject(i + 1, args[i]);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+}
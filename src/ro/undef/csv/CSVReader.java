@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+
+// Reads the rows written by CSVWriter (RFC 4180): cells are separated by
+// commas, cells containing commas, quotes or line breaks are enclosed in
+// double quotes, and quotes inside them are doubled.  Rows may end in either
+// "\r\n", "\n" or "\r".
+public class CSVReader {
+    private static final int EOF = -1;
+
+    private Reader mIn;
+    // A character that was read ahead, or NONE.
+    private int mPeeked;
+    private static final int NONE = -2;
+
+    private ArrayList<String> mCells;
+    private StringBuilder mCell;
+    private int mLineNumber;
+
+    public CSVReader(Reader in) {
+        mIn = in;
+        mPeeked = NONE;
+        mCells = new ArrayList<String>();
+        mCell = new StringBuilder();
+        mLineNumber = 0;
+    }
+
+    // The line on which the last row returned by readRow() ended.
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    // Returns the next row, or null at the end of the input.  Empty lines
+    // are returned as rows with no cells.
+    public String[] readRow() throws IOException {
+        int c = read();
+        if (c == EOF)
+            return null;
+
+        mCells.clear();
+        mLineNumber++;
+        if (isEndOfLine(c)) {
+            skipLineFeed(c);
+            return new String[0];
+        }
+
+        while (true) {
+            mCell.setLength(0);
+            if (c == '"') {
+                c = readQuotedCell();
+            } else {
+                while (c != ',' && c != EOF && !isEndOfLine(c)) {
+                    mCell.append((char) c);
+                    c = read();
+                }
+            }
+            mCells.add(mCell.toString());
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+
+            skipLineFeed(c);
+            return mCells.toArray(new String[mCells.size()]);
+        }
+    }
+
+    // Reads a quoted cell into mCell, assuming the opening quote has already
+    // been consumed.  Returns the character following the closing quote.
+    private int readQuotedCell() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == EOF)
+                throw new IOException("Unterminated quoted cell on line " + mLineNumber);
+
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    if (c != ',' && c != EOF && !isEndOfLine(c))
+                        throw new IOException("Unexpected character after a quoted cell " +
+                                              "on line " + mLineNumber);
+                    return c;
+                }
+            } else if (c == '\n' || (c == '\r' && peek() != '\n')) {
+                mLineNumber++;
+            }
+
+            mCell.append((char) c);
+        }
+    }
+
+    private static boolean isEndOfLine(int c) {
+        return c == '\r' || c == '\n';
+    }
+
+    // Consumes the '\n' of a "\r\n" line ending.
+    private void skipLineFeed(int c) throws IOException {
+        if (c == '\r' && peek() == '\n')
+            read();
+    }
+
+    private int peek() throws IOException {
+        if (mPeeked == NONE)
+            mPeeked = mIn.read();
+        return mPeeked;
+    }
+
+    private int read() throws IOException {
+        if (mPeeked != NONE) {
+            int c = mPeeked;
+            mPeeked = NONE;
+            return c;
+        }
+        return mIn.read();
+    }
+}
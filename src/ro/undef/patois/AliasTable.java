@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+// An implementation of Vose's alias method for sampling from a discrete
+// probability distribution.  Building the table takes O(n) time, and each
+// draw takes O(1) time and exactly two calls to the random number generator,
+// regardless of how skewed the weights are.  For details, see:
+//     http://www.keithschwarz.com/darts-dice-coins/
+
+public class AliasTable {
+    private final int mSize;
+    // mProbability[i] is the probability of keeping column i once it has
+    // been picked; otherwise, we return mAlias[i].
+    private final double[] mProbability;
+    private final int[] mAlias;
+
+    // All the weights must be non-negative, and at least one of them must be
+    // positive.
+    public AliasTable(long[] weights) {
+        int n = weights.length;
+        long totalWeight = 0;
+        for (long w : weights) {
+            if (w < 0)
+                throw new IllegalArgumentException("Negative weight: " + w);
+            totalWeight += w;
+        }
+        if (totalWeight <= 0)
+            throw new IllegalArgumentException("The total weight must be positive.");
+
+        mSize = n;
+        mProbability = new double[n];
+        mAlias = new int[n];
+
+        // Scale the weights so that their average is 1, and split the columns
+        // into those that are too short ("small") and those that are too tall
+        // ("large").  Both work lists share the same array: the small ones
+        // grow from the front, the large ones from the back.
+        double[] scaled = new double[n];
+        int[] work = new int[n];
+        int numSmall = 0;
+        int largeStart = n;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) weights[i] * n / totalWeight;
+            if (scaled[i] < 1.0)
+                work[numSmall++] = i;
+            else
+                work[--largeStart] = i;
+        }
+
+        // Fill each small column up to 1 with the excess of a large one.
+        int large = n;
+        while (numSmall > 0 && large > largeStart) {
+            int s = work[--numSmall];
+            int l = work[--large];
+
+            mProbability[s] = scaled[s];
+            mAlias[s] = l;
+
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0)
+                work[numSmall++] = l;
+            else
+                work[large++] = l;
+        }
+
+        // Whatever is left is (up to rounding errors) exactly 1.
+        while (large > largeStart)
+            mProbability[work[--large]] = 1.0;
+        while (numSmall > 0)
+            mProbability[work[--numSmall]] = 1.0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    // Returns an index in [0, size()), with a probability proportional to
+    // its weight.
+    public int next(Random random) {
+        int column = random.nextInt(mSize);
+        if (random.nextDouble() < mProbability[column])
+            return column;
+        return mAlias[column];
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+// Collects the answers given during practice and saves them to the database
+// in batches, so that drilling through the words costs one commit every
+// MAX_PENDING_ANSWERS answers instead of one for each answer.
+//
+// Until they are saved, the answers are also appended to a small journal
+// file, one line per answer.  If the process dies before a flush, the
+// journal is replayed the next time the queue is used.  The journal isn't
+// synced to disk (that would cost as much as the commits we're trying to
+// avoid), so it survives the process being killed, but not a power loss.
+
+public class AnswerQueue {
+    private final static String TAG = "AnswerQueue";
+
+    // The pending answers are saved once there are this many of them, or
+    // once the oldest one is this old (see scheduleFlush()).  The owner of
+    // the queue should also call flush() whenever the user stops practicing.
+    public static final int MAX_PENDING_ANSWERS = 20;
+    public static final long MAX_PENDING_TIME = 60;   // seconds
+
+    private File mJournalFile;
+    private ArrayList<Trainer.Answer> mPending;
+    private boolean mJournalReplayed;
+    private Handler mHandler;
+    private boolean mFlushScheduled;
+
+    public AnswerQueue(File journalFile) {
+        mJournalFile = journalFile;
+        mPending = new ArrayList<Trainer.Answer>();
+        mJournalReplayed = false;
+        mHandler = new Handler(Looper.getMainLooper());
+        mFlushScheduled = false;
+    }
+
+    public synchronized void add(Database db, Trainer.Answer answer) {
+        replayJournal(db);
+
+        appendToJournal(answer);
+        mPending.add(answer);
+        db.updateCandidatePools(answer);
+
+        if (!mFlushScheduled)
+            scheduleFlush(db);
+
+        long age = answer.timestamp - mPending.get(0).timestamp;
+        if (mPending.size() >= MAX_PENDING_ANSWERS || age >= MAX_PENDING_TIME)
+            flush(db);
+    }
+
+    // Returns the most recent pending answer for the given word and
+    // direction, or null if there is none.
+    public synchronized Trainer.Answer getPending(long wordId, Trainer.Direction direction) {
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            Trainer.Answer answer = mPending.get(i);
+            if (answer.wordId == wordId && answer.direction == direction)
+                return answer;
+        }
+        return null;
+    }
+
+    // Saves all the pending answers in a single transaction.  If that fails,
+    // they're kept for the next flush.
+    public synchronized void flush(Database db) {
+        replayJournal(db);
+
+        if (mPending.isEmpty())
+            return;
+
+        try {
+            db.saveAnswers(mPending);
+        } catch (SQLException e) {
+            Log.e(TAG, "Could not save " + mPending.size() + " answers", e);
+            return;
+        }
+
+        mPending.clear();
+        mJournalFile.delete();
+    }
+
+    // Flushes the queue MAX_PENDING_TIME seconds after the first answer
+    // added since the last scheduled flush, in case no more answers come in
+    // the meantime.  The flush runs on the writer thread of DatabaseExecutor,
+    // which holds on to the database until then.  If the queue was flushed
+    // in the meantime, this saves the answers added after that (if any) a
+    // bit early.
+    private void scheduleFlush(Database db) {
+        final DatabaseExecutor executor = new DatabaseExecutor(db.acquire());
+        mFlushScheduled = true;
+
+        mHandler.postDelayed(new Runnable() {
+            public void run() {
+                executor.write(new DatabaseExecutor.Operation<Void>() {
+                    public Void run(Database db) {
+                        synchronized (AnswerQueue.this) {
+                            mFlushScheduled = false;
+                            flush(db);
+                        }
+                        return null;
+                    }
+                }, null);
+                executor.close();
+            }
+        }, MAX_PENDING_TIME * 1000);
+    }
+
+    // Saves the answers left in the journal by a previous process.  This
+    // only needs to be done once, before the queue is used for the first
+    // time.
+    private void replayJournal(Database db) {
+        if (mJournalReplayed)
+            return;
+        mJournalReplayed = true;
+
+        ArrayList<Trainer.Answer> answers = readJournal();
+        if (answers.isEmpty())
+            return;
+
+        Log.i(TAG, "Replaying " + answers.size() + " answers from " + mJournalFile);
+        try {
+            db.saveAnswers(answers);
+        } catch (SQLException e) {
+            Log.e(TAG, "Could not replay the answer journal", e);
+            // Keep them around for the next flush.
+            mPending.addAll(answers);
+            return;
+        }
+
+        // Some of the answers might have been skipped, so it's easier to
+        // reload the candidate pools than to figure out which ones changed.
+        Database.invalidateCaches();
+        mJournalFile.delete();
+    }
+
+    private ArrayList<Trainer.Answer> readJournal() {
+        ArrayList<Trainer.Answer> answers = new ArrayList<Trainer.Answer>();
+
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mJournalFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    Trainer.Answer answer = parseAnswer(line);
+                    if (answer != null)
+                        answers.add(answer);
+                    else
+                        Log.w(TAG, "Ignoring malformed journal line: " + line);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing to replay.
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + mJournalFile, e);
+        }
+
+        return answers;
+    }
+
+    private void appendToJournal(Trainer.Answer answer) {
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(mJournalFile, true),
+                                                "UTF-8");
+            try {
+                out.write(formatAnswer(answer));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // The answer will still be saved by the next flush.
+            Log.w(TAG, "Could not write to " + mJournalFile, e);
+        }
+    }
+
+    // The journal lines have the form:
+    //     trainer word_id language_id direction successful level next_practice timestamp
+    private static String formatAnswer(Trainer.Answer answer) {
+        return answer.trainerVersion + " " +
+               answer.wordId + " " +
+               answer.languageId + " " +
+               answer.direction.getValue() + " " +
+               (answer.successful ? 1 : 0) + " " +
+               answer.level + " " +
+               answer.nextPractice + " " +
+               answer.timestamp + "\n";
+    }
+
+    // Returns null if the line is malformed (e.g., if it was only partially
+    // written before the process died).
+    private static Trainer.Answer parseAnswer(String line) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 8)
+            return null;
+
+        try {
+            return new Trainer.Answer(Integer.parseInt(fields[0]),
+                                      Long.parseLong(fields[1]),
+                                      Long.parseLong(fields[2]),
+                                      Trainer.Direction.fromValue(Integer.parseInt(fields[3])),
+                                      Integer.parseInt(fields[4]) != 0,
+                                      Integer.parseInt(fields[5]),
+                                      Long.parseLong(fields[6]),
+                                      Long.parseLong(fields[7]));
+        } catch (RuntimeException e) {
+            // Either a NumberFormatException, or an invalid direction.
+            return null;
+        }
+    }
+}
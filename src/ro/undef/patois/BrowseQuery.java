@@ -0,0 +1,309 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+// Builds the queries behind the browse list (see
+// Database.getBrowseWordsCursor()): counting the words which match a
+// filter, loading a page of them in one of the sort orders, and reloading a
+// single row.  The queries are driven by the words table, in the sort
+// order, so that with the words_by_sort_name and words_by_timestamp
+// indexes, loading a page only reads the rows of that page.
+//
+// Like DatabaseQueries, this is plain Java, so the queries can be
+// benchmarked on the host.
+
+public class BrowseQuery {
+    public static final int SORT_ORDER_BY_NAME = 0;
+    public static final int SORT_ORDER_BY_SCORE = 1;
+    public static final int SORT_ORDER_NEWEST_FIRST = 2;
+    public static final int SORT_ORDER_OLDEST_FIRST = 3;
+
+    public static final String[] COLUMNS = {
+        "_id",
+        "display_name",
+        "display_translations",
+        "sort_name",
+        "timestamp",
+        "level_from",
+        "next_practice_from",
+        "level_to",
+        "next_practice_to",
+        "sort_level",
+        "sort_next_practice",
+    };
+    // Whether each of the COLUMNS holds text or integers.
+    public static final boolean[] TEXT_COLUMNS = {
+        false, true, true, true, false, false, false, false, false, false, false,
+    };
+    public static final int ID_COLUMN_ID = 0;
+    public static final int SORT_NAME_COLUMN_ID = 3;
+    public static final int TIMESTAMP_COLUMN_ID = 4;
+    public static final int LEVEL_FROM_COLUMN_ID = 5;
+    public static final int NEXT_PRACTICE_FROM_COLUMN_ID = 6;
+    public static final int LEVEL_TO_COLUMN_ID = 7;
+    public static final int NEXT_PRACTICE_TO_COLUMN_ID = 8;
+    public static final int SORT_LEVEL_COLUMN_ID = 9;
+    public static final int SORT_NEXT_PRACTICE_COLUMN_ID = 10;
+
+    private String mFilter;
+    private String[] mFilterArgs;
+    private String mCountQuery;
+    // The expressions the rows are sorted by, followed by the word ID, and
+    // the columns holding their values.
+    private String[] mSortKeys;
+    private int[] mSortKeyColumns;
+    private boolean mDescending;
+
+    // Selects the words of the language which have tokens starting with
+    // each of the filter's tokens, or which are translated by such words,
+    // using the full-text index.  Returns null if the filter has no tokens.
+    public static BrowseQuery forPrefixMatch(String languageId, String filter,
+                                             int sortOrder) {
+        String match = getPrefixMatchQuery(filter);
+        if (match == null)
+            return null;
+
+        // The unary "+" stops SQLite from using the language indexes, so
+        // the queries are driven by the (much smaller) set of matches.  It
+        // also drops the column affinity, hence the CAST.
+        return new BrowseQuery(
+                "    +w.language_id == CAST(? AS INTEGER) AND " +
+                "    w._id IN ( " +
+                "      SELECT docid FROM words_fts WHERE words_fts MATCH ? " +
+                "      UNION " +
+                "      SELECT word_id1 FROM translations WHERE word_id2 IN ( " +
+                "        SELECT docid FROM words_fts WHERE words_fts MATCH ?)) ",
+                new String[] { languageId, match, match }, sortOrder);
+    }
+
+    // Selects the words of the language which contain the filter, or which
+    // are translated by such words.  This can't use any index, so it's only
+    // meant as a fallback for forPrefixMatch().
+    public static BrowseQuery forSubstring(String languageId, String filter,
+                                           int sortOrder) {
+        String pattern = "%" + filter + "%";
+        return new BrowseQuery(
+                "    w.language_id == ? AND " +
+                "    (w.name LIKE ? OR " +
+                "     w._id IN (SELECT t.word_id1 " +
+                "                 FROM translations AS t, words AS w2 " +
+                "                 WHERE t.word_id2 == w2._id AND w2.name LIKE ?)) ",
+                new String[] { languageId, pattern, pattern }, sortOrder);
+    }
+
+    // Selects all the words of the language.
+    public static BrowseQuery forLanguage(String languageId, int sortOrder) {
+        // The languages table keeps track of the number of words, so
+        // there's no need to count them.
+        return new BrowseQuery("    w.language_id == ? ", new String[] { languageId },
+                               "SELECT num_words FROM languages WHERE _id == ?",
+                               sortOrder);
+    }
+
+    // filter is the WHERE condition selecting the words (as w).
+    private BrowseQuery(String filter, String[] filterArgs, int sortOrder) {
+        this(filter, filterArgs, "SELECT count(*) FROM words AS w WHERE " + filter,
+             sortOrder);
+    }
+
+    // countQuery returns the number of words selected by filter, taking the
+    // same arguments.
+    private BrowseQuery(String filter, String[] filterArgs, String countQuery,
+                        int sortOrder) {
+        mFilter = filter;
+        mFilterArgs = filterArgs;
+        mCountQuery = countQuery;
+
+        switch (sortOrder) {
+            case SORT_ORDER_BY_SCORE:
+                setSortKeys(new String[] { "sort_next_practice", "sort_level" },
+                            new int[] {
+                                SORT_NEXT_PRACTICE_COLUMN_ID,
+                                SORT_LEVEL_COLUMN_ID,
+                            }, false);
+                break;
+            case SORT_ORDER_NEWEST_FIRST:
+                setSortKeys(new String[] { "w.timestamp" },
+                            new int[] { TIMESTAMP_COLUMN_ID }, true);
+                break;
+            case SORT_ORDER_OLDEST_FIRST:
+                setSortKeys(new String[] { "w.timestamp" },
+                            new int[] { TIMESTAMP_COLUMN_ID }, false);
+                break;
+            case SORT_ORDER_BY_NAME:
+            default:
+                setSortKeys(new String[] { "w.name COLLATE NOCASE" },
+                            new int[] { SORT_NAME_COLUMN_ID }, false);
+                break;
+        }
+    }
+
+    private void setSortKeys(String[] keys, int[] columns, boolean descending) {
+        mSortKeys = new String[keys.length + 1];
+        mSortKeyColumns = new int[columns.length + 1];
+        System.arraycopy(keys, 0, mSortKeys, 0, keys.length);
+        System.arraycopy(columns, 0, mSortKeyColumns, 0, columns.length);
+        mSortKeys[keys.length] = "w._id";
+        mSortKeyColumns[columns.length] = ID_COLUMN_ID;
+        mDescending = descending;
+    }
+
+    // Returns the query counting the selected words, which takes the
+    // arguments returned by getCountArgs().
+    public String getCountQuery() {
+        return mCountQuery;
+    }
+
+    public String[] getCountArgs() {
+        return mFilterArgs;
+    }
+
+    // Returns the query loading the limit rows which follow lastRow (a row
+    // with the COLUMNS), or the limit rows starting at offset if lastRow is
+    // null.  Its arguments are appended to args.
+    public String getPageQuery(Object[] lastRow, int offset, int limit,
+                               ArrayList<String> args) {
+        for (String arg : mFilterArgs)
+            args.add(arg);
+
+        String where = mFilter;
+        if (lastRow != null) {
+            where += " AND " + getKeysetCondition(0, lastRow, args);
+            offset = 0;
+        }
+
+        StringBuilder orderBy = new StringBuilder();
+        for (String key : mSortKeys) {
+            if (orderBy.length() != 0)
+                orderBy.append(", ");
+            orderBy.append(key).append(mDescending ? " DESC" : " ASC");
+        }
+
+        return getSelect(where) +
+               "  ORDER BY " + orderBy +
+               "  LIMIT " + limit + " OFFSET " + offset;
+    }
+
+    // Returns the query loading the row of the word with the given ID, if
+    // it's selected.  Its arguments are appended to args.
+    public String getRowQuery(long id, ArrayList<String> args) {
+        for (String arg : mFilterArgs)
+            args.add(arg);
+        args.add(Long.toString(id));
+
+        return getSelect(mFilter + " AND w._id == ? ");
+    }
+
+    private static String getSelect(String where) {
+        return "SELECT " +
+               "    w._id AS _id, " +
+               // Simple escaping for BrowseWordsActivity.applyWordMarkup().
+               "    CASE WHEN w.num_translations > 0 " +
+               "      THEN replace(w.name, '.', '..') " +
+               "      ELSE '.u' || replace(w.name, '.', '..') || '.U' " +
+               "    END AS display_name, " +
+               // display_translations is kept up-to-date by triggers (see
+               // patois.sql).
+               "    CASE WHEN w.num_translations > 0 " +
+               "      THEN w.display_translations ELSE '.c.0.C' " +
+               "    END AS display_translations, " +
+               "    w.name AS sort_name, " +
+               "    w.timestamp AS timestamp, " +
+               // The words without translations can't be practiced, so they
+               // don't have a score.
+               "    CASE WHEN w.num_translations > 0 THEN w.level_from ELSE 0 END " +
+               "      AS level_from, " +
+               "    CASE WHEN w.num_translations > 0 THEN w.next_practice_from ELSE 0 END " +
+               "      AS next_practice_from, " +
+               "    CASE WHEN w.num_translations > 0 THEN w.level_to ELSE 0 END " +
+               "      AS level_to, " +
+               "    CASE WHEN w.num_translations > 0 THEN w.next_practice_to ELSE 0 END " +
+               "      AS next_practice_to, " +
+               "    CASE WHEN w.num_translations > 0 " +
+               "      THEN min(w.level_from, w.level_to) ELSE 0 " +
+               "    END AS sort_level, " +
+               "    CASE WHEN w.num_translations > 0 " +
+               "      THEN min(w.next_practice_from, w.next_practice_to) ELSE 0 " +
+               "    END AS sort_next_practice " +
+               "  FROM " +
+               "    words AS w " +
+               "  WHERE " +
+               where;
+    }
+
+    // Returns the condition selecting the rows which come after lastRow in
+    // the sort order, considering the sort keys starting with mSortKeys[i].
+    // For keys k1, k2 and values v1, v2, this is:
+    //     k1 >= v1 AND (k1 > v1 OR (k2 >= v2 AND (k2 > v2 OR ...)))
+    // which (unlike the equivalent "k1 > v1 OR (k1 == v1 AND ...)") lets
+    // SQLite use an index on k1 for skipping the previous rows.
+    private String getKeysetCondition(int i, Object[] lastRow, ArrayList<String> args) {
+        String key = mSortKeys[i];
+        Object value = lastRow[mSortKeyColumns[i]];
+        // The arguments are always bound as text, so the integers have to be
+        // converted back for the comparisons to work.
+        String placeholder = (value instanceof String) ? "?" : "CAST(? AS INTEGER)";
+        String after = mDescending ? " < " : " > ";
+
+        if (i == mSortKeys.length - 1) {
+            args.add(value.toString());
+            return key + after + placeholder;
+        }
+
+        String notBefore = mDescending ? " <= " : " >= ";
+        args.add(value.toString());
+        args.add(value.toString());
+        return key + notBefore + placeholder + " AND " +
+               "(" + key + after + placeholder + " OR " +
+               "(" + getKeysetCondition(i + 1, lastRow, args) + "))";
+    }
+
+    // Converts the filter typed by the user into an FTS3 query which matches
+    // the words containing tokens starting with each of the filter's tokens.
+    // Returns null if the filter has no tokens.
+    private static String getPrefixMatchQuery(String filter) {
+        StringBuilder query = new StringBuilder();
+        int length = filter.length();
+        int i = 0;
+
+        while (i < length) {
+            // Skip everything that can't be part of an FTS3 token, including
+            // the characters with a special meaning in the query syntax.
+            while (i < length && !Character.isLetterOrDigit(filter.charAt(i)))
+                i++;
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(filter.charAt(i)))
+                i++;
+
+            if (i > start) {
+                if (query.length() != 0)
+                    query.append(' ');
+                // Lower-case the tokens, so they can't be taken for operators
+                // such as "OR" or "NOT".  The default locale might not map
+                // them like the tokenizer does (e.g., "I" to a dotless "ı"
+                // in Turkish), so a fixed one is used.
+                query.append(filter.substring(start, i).toLowerCase(Locale.US));
+                query.append('*');
+            }
+        }
+
+        return query.length() != 0 ? query.toString() : null;
+    }
+}
@@ -18,11 +18,12 @@ package ro.undef.patois;
 
 import android.app.ListActivity;
 import android.content.Intent;
-import android.content.res.Resources;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.os.Bundle;
-import android.text.Spannable;
+import android.os.Handler;
 import android.text.SpannableStringBuilder;
+import android.text.SpannedString;
 import android.text.style.TextAppearanceSpan;
 import android.util.Log;
 import android.view.ContextMenu;
@@ -36,24 +37,36 @@ import android.widget.ListAdapter;
 import android.widget.ListView;
 import android.widget.SimpleCursorAdapter;
 import android.widget.TextView;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class BrowseWordsActivity extends ListActivity {
     private final static String TAG = "BrowseWordsActivity";
 
     private Database mDb;
-    private Cursor mCursor;
+    private DatabaseExecutor mExecutor;
     private SimpleCursorAdapter mAdapter;
+    private int mSortOrder;
+    // The last filter typed by the user.  It's set from the filtering thread.
+    private volatile String mFilter;
+    // Patches the list when single words are changed or deleted.
+    private WordObserver mWordObserver;
+    private Handler mHandler;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mDb = new Database(this);
-        mCursor = mDb.getBrowseWordsCursor(mDb.getActiveLanguage(), "");
+        mDb = PatoisApplication.acquireDatabase(this);
+        mExecutor = new DatabaseExecutor(mDb);
+        mSortOrder = Database.SORT_ORDER_BY_NAME;
+        mFilter = "";
+
+        // The cursor is set by loadWords(), once the query finishes.
         mAdapter = new SimpleCursorAdapter(
                 this,
                 R.layout.browse_words_list_item,
-                mCursor,
+                null,
                 new String[] {
                     Database.BROWSE_WORDS_NAME_COLUMN,
                     Database.BROWSE_WORDS_TRANSLATIONS_COLUMN,
@@ -67,10 +80,11 @@ public class BrowseWordsActivity extends ListActivity {
                 });
         mAdapter.setViewBinder(new WordViewBinder());
         mAdapter.setFilterQueryProvider(new FilterQueryProvider() {
+            // Filtering already runs in a background thread.  The adapter
+            // closes the previous cursor when it switches to this one.
             public Cursor runQuery(CharSequence constraint) {
-                return mDb.getBrowseWordsCursor(
-                        mDb.getActiveLanguage(),
-                        (constraint != null) ? constraint.toString() : "");
+                mFilter = (constraint != null) ? constraint.toString() : "";
+                return mDb.getBrowseWordsCursor(mDb.getActiveLanguage(), mFilter);
             }
         });
         setListAdapter(mAdapter);
@@ -79,12 +93,118 @@ public class BrowseWordsActivity extends ListActivity {
         listView.setFastScrollEnabled(true);
         listView.setTextFilterEnabled(true);
         registerForContextMenu(listView);
+
+        mExecutor.read(new DatabaseExecutor.Operation<Integer>() {
+            public Integer run(Database db) {
+                return db.getSortOrder();
+            }
+        }, new DatabaseExecutor.Callback<Integer>() {
+            public void onResult(Integer sortOrder) {
+                mSortOrder = sortOrder;
+            }
+        });
+        loadWords();
+
+        // The observer is called on the writer thread, so it forwards the
+        // changes to the main thread, which owns the cursor.
+        mHandler = new Handler();
+        mWordObserver = new WordObserver() {
+            public void onWordChanged(final long wordId) {
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        refreshWord(wordId);
+                    }
+                });
+            }
+
+            public void onWordDeleted(final long wordId) {
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        removeWord(wordId);
+                    }
+                });
+            }
+        };
+        WordChanges.registerObserver(mWordObserver);
+    }
+
+    // The cursor isn't managed by the activity, since a managed requery()
+    // would count the words and load the pages on the main thread, without
+    // waiting for the writes of the activity we're coming back from (e.g.,
+    // EditWordActivity).  The reads of mExecutor wait for those.
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        loadWords();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDb.close();
+        WordChanges.unregisterObserver(mWordObserver);
+        mAdapter.changeCursor(null);
+        mExecutor.close();
+    }
+
+    // (Re)loads the list of words in the background.
+    private void loadWords() {
+        final String filter = mFilter;
+
+        mExecutor.read(new DatabaseExecutor.Operation<Cursor>() {
+            public Cursor run(Database db) {
+                // This also loads the first page of words, so the main
+                // thread doesn't have to.
+                return db.getBrowseWordsCursor(db.getActiveLanguage(), filter);
+            }
+        }, new DatabaseExecutor.Callback<Cursor>() {
+            public void onResult(Cursor cursor) {
+                mAdapter.changeCursor(cursor);
+            }
+        });
+    }
+
+    // Returns the cursor shown by the list, or null if it's not loaded yet.
+    private PagedCursor getPagedCursor() {
+        Cursor cursor = mAdapter.getCursor();
+        return (cursor instanceof PagedCursor) ? (PagedCursor) cursor : null;
+    }
+
+    // Reloads the row of a word which was changed, leaving the rest of the
+    // list (and the scroll position) alone.
+    private void refreshWord(final long wordId) {
+        final PagedCursor cursor = getPagedCursor();
+        if (cursor == null)
+            return;
+
+        mExecutor.read(new DatabaseExecutor.Operation<Object[]>() {
+            public Object[] run(Database db) {
+                return cursor.loadRow(wordId);
+            }
+        }, new DatabaseExecutor.Callback<Object[]>() {
+            public void onResult(Object[] row) {
+                // The list might have been reloaded in the meantime.
+                if (cursor != mAdapter.getCursor())
+                    return;
+
+                boolean patched = (row != null) ? cursor.updateRow(row)
+                                                : cursor.removeRow(wordId);
+                if (patched)
+                    mAdapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    // Removes a deleted word from the list.  If it isn't in one of the
+    // loaded pages, we can't tell where it was, so the list is reloaded.
+    private void removeWord(long wordId) {
+        PagedCursor cursor = getPagedCursor();
+        if (cursor == null)
+            return;
+
+        if (cursor.removeRow(wordId))
+            mAdapter.notifyDataSetChanged();
+        else
+            loadWords();
     }
 
     @Override
@@ -106,8 +226,13 @@ public class BrowseWordsActivity extends ListActivity {
 
         switch (item.getItemId()) {
             case R.id.reset_score: {
-                mDb.resetPracticeInfoById(info.id);
-                mCursor.requery();
+                final long id = info.id;
+                mExecutor.write(new DatabaseExecutor.Operation<Boolean>() {
+                    public Boolean run(Database db) {
+                        return db.resetPracticeInfoById(id);
+                    }
+                }, null);
+                // The row is patched by mWordObserver.
                 return true;
             }
             case R.id.edit_word: {
@@ -115,8 +240,13 @@ public class BrowseWordsActivity extends ListActivity {
                 return true;
             }
             case R.id.delete_word: {
-                mDb.deleteWordById(info.id);
-                mCursor.requery();
+                final long id = info.id;
+                mExecutor.write(new DatabaseExecutor.Operation<Boolean>() {
+                    public Boolean run(Database db) {
+                        return db.deleteWordById(id);
+                    }
+                }, null);
+                // The row is removed by mWordObserver.
                 return true;
             }
         }
@@ -136,7 +266,7 @@ public class BrowseWordsActivity extends ListActivity {
 
         // Show the active sort order as selected.
         int id = R.id.sort_by_name;
-        switch (mDb.getSortOrder()) {
+        switch (mSortOrder) {
             case Database.SORT_ORDER_BY_NAME:
                 id = R.id.sort_by_name;
                 break;
@@ -183,10 +313,15 @@ public class BrowseWordsActivity extends ListActivity {
         return false;
     }
 
-    private void setSortOrder(int order) {
-        mDb.setSortOrder(order);
-        mCursor = mDb.getBrowseWordsCursor(mDb.getActiveLanguage(), "");
-        mAdapter.changeCursor(mCursor);
+    private void setSortOrder(final int order) {
+        mSortOrder = order;
+        mExecutor.write(new DatabaseExecutor.Operation<Void>() {
+            public Void run(Database db) {
+                db.setSortOrder(order);
+                return null;
+            }
+        }, null);
+        loadWords();
     }
 
     private void startEditWordActivity(long id) {
@@ -207,13 +342,46 @@ public class BrowseWordsActivity extends ListActivity {
     // Note that this inner class is NOT static, since it uses resources from
     // the outer activity.
     private class WordViewBinder implements SimpleCursorAdapter.ViewBinder {
+        // The number of rendered texts kept by mRenderedTexts.  This covers
+        // a few screens' worth of list items in each direction.
+        private static final int MAX_RENDERED_TEXTS = 256;
+
         private ScoreRenderer mScoreRenderer;
 
+        // The text appearances of the markup, resolved once.  Each range
+        // needs a span object of its own (see newSpan()).
+        private TextAppearanceSpan mLanguageCodeSpan;
+        private TextAppearanceSpan mUntranslatedSpan;
+        private String mNoTranslations;
+
+        // The most recently rendered texts, keyed by 2 * word ID + 0 for the
+        // name or + 1 for the translations, in least-recently-used order.
+        // This way, scrolling back and forth through the list doesn't parse
+        // the markup and allocate new spans over and over.
+        private LinkedHashMap<Long, RenderedText> mRenderedTexts;
+        // Reused for reading the markup out of the cursor without allocating.
+        private CharArrayBuffer mMarkupBuffer;
+
         public WordViewBinder() {
             mScoreRenderer = new ScoreRenderer(BrowseWordsActivity.this,
                                                R.style.browse_score_good,
                                                R.style.browse_score_average,
                                                R.style.browse_score_bad);
+
+            mLanguageCodeSpan = new TextAppearanceSpan(BrowseWordsActivity.this,
+                                                       R.style.language_code_tag);
+            mUntranslatedSpan = new TextAppearanceSpan(BrowseWordsActivity.this,
+                                                       R.style.untranslated_word);
+            mNoTranslations = getResources().getString(R.string.no_translations);
+
+            mRenderedTexts = new LinkedHashMap<Long, RenderedText>(
+                    MAX_RENDERED_TEXTS * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, RenderedText> eldest) {
+                    return size() > MAX_RENDERED_TEXTS;
+                }
+            };
+            mMarkupBuffer = new CharArrayBuffer(128);
         }
 
         public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
@@ -221,8 +389,8 @@ public class BrowseWordsActivity extends ListActivity {
                 case R.id.name:
                 case R.id.translations: {
                     TextView v = (TextView) view;
-                    String text = cursor.getString(columnIndex);
-                    v.setText(applyWordMarkup(text));
+                    v.setText(getRenderedText(cursor, columnIndex,
+                                              view.getId() == R.id.name ? 0 : 1));
                     return true;
                 }
                 case R.id.score: {
@@ -238,6 +406,23 @@ public class BrowseWordsActivity extends ListActivity {
             return false;
         }
 
+        // Returns the rendered markup from the given column of the current
+        // row.  The cached texts are only reused if their markup is still the
+        // same, since the words can be edited from other activities.
+        private CharSequence getRenderedText(Cursor cursor, int columnIndex, int slot) {
+            cursor.copyStringToBuffer(columnIndex, mMarkupBuffer);
+            Long key = cursor.getLong(Database.BROWSE_WORDS_ID_COLUMN_ID) * 2 + slot;
+
+            RenderedText rendered = mRenderedTexts.get(key);
+            if (rendered == null || !rendered.hasMarkup(mMarkupBuffer)) {
+                rendered = new RenderedText(mMarkupBuffer, applyWordMarkup(
+                        mMarkupBuffer.data, mMarkupBuffer.sizeCopied));
+                mRenderedTexts.put(key, rendered);
+            }
+
+            return rendered.text;
+        }
+
         // This function implements a simple mark-up language for putting
         // rich-text into the BrowseWordsActivity list.  We implement this
         // by hand because we want to use SQLite for generating the content
@@ -245,7 +430,8 @@ public class BrowseWordsActivity extends ListActivity {
         // significantly more complex to generate the list of translations
         // outside of SQLite, since we would have to issue sub-queries for
         // each word).  See the SELECT statement in
-        // Database.getBrowseWordsCursor() for how details.
+        // Database.BrowseWordsLoader.loadPage() and the
+        // display_translations_* triggers in patois.sql for details.
         //
         // However, we still want getBrowseWordsCursor() to signal the
         // presence of special items such as the language code tag or words
@@ -267,43 +453,74 @@ public class BrowseWordsActivity extends ListActivity {
         //
         // All other escape sequences will be ignored.
         //
-        private Spannable applyWordMarkup(String text) {
+        // The result is a SpannedString, which TextView.setText() uses as-is
+        // instead of making a copy.
+        //
+        private CharSequence applyWordMarkup(char[] text, int textLength) {
             SpannableStringBuilder ssb = new SpannableStringBuilder();
             int languageCodeStart = 0;
             int untranslatedStart = 0;
 
-            int textLength = text.length();
             for (int i = 0; i < textLength; i++) {
-                char c = text.charAt(i);
+                char c = text[i];
                 if (c == '.') {
                     if (++i < textLength) {
-                        c = text.charAt(i);
+                        c = text[i];
                         if (c == '.') {
                             ssb.append(c);
                         } else if (c == 'c') {
                             languageCodeStart = ssb.length();
                         } else if (c == 'C') {
-                            ssb.setSpan(new TextAppearanceSpan(BrowseWordsActivity.this,
-                                                               R.style.language_code_tag),
+                            ssb.setSpan(newSpan(mLanguageCodeSpan),
                                         languageCodeStart, ssb.length(), 0);
                             languageCodeStart = ssb.length();
                         } else if (c == 'u') {
                             untranslatedStart = ssb.length();
                         } else if (c == 'U') {
-                            ssb.setSpan(new TextAppearanceSpan(BrowseWordsActivity.this,
-                                                               R.style.untranslated_word),
+                            ssb.setSpan(newSpan(mUntranslatedSpan),
                                         untranslatedStart, ssb.length(), 0);
                             untranslatedStart = ssb.length();
                         } else if (c == '0') {
-                            Resources res = getResources();
-                            ssb.append(res.getString(R.string.no_translations));
+                            ssb.append(mNoTranslations);
                         }
                     }
                 } else
                     ssb.append(c);
             }
 
-            return ssb;
+            return new SpannedString(ssb);
+        }
+
+        // Setting a span which is already attached to the text moves it
+        // instead of adding it again, so each range gets a copy of the
+        // (already resolved) appearance, which is much cheaper than loading
+        // it from the style again.
+        private TextAppearanceSpan newSpan(TextAppearanceSpan span) {
+            return new TextAppearanceSpan(span.getFamily(), span.getTextStyle(),
+                                          span.getTextSize(), span.getTextColor(),
+                                          span.getLinkTextColor());
+        }
+    }
+
+    // A rendered text, together with the markup it was rendered from.
+    private static class RenderedText {
+        public final char[] markup;
+        public final CharSequence text;
+
+        public RenderedText(CharArrayBuffer markup, CharSequence text) {
+            this.markup = new char[markup.sizeCopied];
+            System.arraycopy(markup.data, 0, this.markup, 0, markup.sizeCopied);
+            this.text = text;
+        }
+
+        public boolean hasMarkup(CharArrayBuffer buffer) {
+            if (buffer.sizeCopied != markup.length)
+                return false;
+            for (int i = 0; i < markup.length; i++) {
+                if (buffer.data[i] != markup[i])
+                    return false;
+            }
+            return true;
         }
     }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// The in-memory set of words that can be picked for practice in one
+// direction, with the same weights as DatabaseQueries.getWordWeightsQuery():
+// a word is a candidate once it's due for practice and it hasn't been
+// practiced (in either direction) during the last MIN_PRACTICE_GAP seconds,
+// and its weight is the number of seconds since it was due.
+//
+// The weights keep growing as time passes, so we can't store them directly.
+// Instead, we keep two Fenwick trees over the word slots: one with the number
+// of active candidates, and one with the sum of their nextPractice times.
+// The total weight of any range of slots is then count * now - sum, which
+// lets select() do a weighted draw in O(log n).  Words which aren't
+// candidates yet wait in a priority queue, ordered by the time they become
+// eligible, and are moved into the trees by select().
+
+public class CandidatePool {
+    public static final long MIN_PRACTICE_GAP = 60 * 60;   // 1 hour
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private HashMap<Long, Integer> mSlots;
+    private int mCapacity;
+    private int mNumSlots;
+    private int[] mFreeSlots;
+    private int mNumFreeSlots;
+
+    private long[] mWordIds;
+    private long[] mNextPractice;
+    private long[] mLastPractice;
+    // The earliest time when the word in each slot becomes a candidate, or
+    // Long.MAX_VALUE if the slot is not in use.
+    private long[] mEligibleAt;
+    private boolean[] mActive;
+
+    // The Fenwick trees, indexed from 1.
+    private long[] mCountTree;
+    private long[] mSumTree;
+
+    private PriorityQueue<Pending> mPending;
+    private long mLastNow;
+
+    public CandidatePool() {
+        mSlots = new HashMap<Long, Integer>();
+        mPending = new PriorityQueue<Pending>();
+        mLastNow = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public synchronized int size() {
+        return mSlots.size();
+    }
+
+    public synchronized boolean contains(long wordId) {
+        return mSlots.containsKey(wordId);
+    }
+
+    // Adds a word to the pool, or replaces its practice times if it's
+    // already there.  lastPractice is the most recent practice time, in any
+    // direction.
+    public synchronized void put(long wordId, long nextPractice, long lastPractice) {
+        Integer slot = mSlots.get(wordId);
+        if (slot == null) {
+            slot = allocateSlot();
+            mSlots.put(wordId, slot);
+            mWordIds[slot] = wordId;
+        }
+        schedule(slot, nextPractice, lastPractice);
+    }
+
+    // Like put(), but does nothing if the word is not in the pool.
+    public synchronized void update(long wordId, long nextPractice, long lastPractice) {
+        Integer slot = mSlots.get(wordId);
+        if (slot != null)
+            schedule(slot, nextPractice, lastPractice);
+    }
+
+    // Records that the word was practiced (in the other direction) at the
+    // given time.  Does nothing if the word is not in the pool.
+    public synchronized void updateLastPractice(long wordId, long lastPractice) {
+        Integer slot = mSlots.get(wordId);
+        if (slot != null)
+            schedule(slot, mNextPractice[slot], Math.max(mLastPractice[slot], lastPractice));
+    }
+
+    public synchronized void remove(long wordId) {
+        Integer slot = mSlots.remove(wordId);
+        if (slot == null)
+            return;
+
+        deactivate(slot);
+        mEligibleAt[slot] = Long.MAX_VALUE;
+        mFreeSlots[mNumFreeSlots++] = slot;
+    }
+
+    // Returns a random word ID, with a probability proportional to the
+    // word's weight at time "now", or -1 if there are no candidates.
+    public synchronized long select(long now, Random random) {
+        Set<Long> none = Collections.emptySet();
+        long[] wordIds = select(now, random, 1, none);
+        return wordIds.length > 0 ? wordIds[0] : -1;
+    }
+
+    // Returns up to count distinct word IDs, drawn without replacement: each
+    // draw picks a word with a probability proportional to its weight among
+    // the words not drawn yet.  The words in excludedWordIds are never
+    // returned, as if they had no weight.  Fewer than count IDs are returned
+    // only if there aren't enough candidates.
+    //
+    // The drawn and excluded words are taken out of the Fenwick trees while
+    // drawing and put back at the end, so this takes O((count + number of
+    // excluded words) * log n) time.
+    public synchronized long[] select(long now, Random random, int count,
+                                      Set<Long> excludedWordIds) {
+        // Never go back in time, or some of the weights could become negative.
+        now = Math.max(now, mLastNow);
+        mLastNow = now;
+
+        activateEligible(now);
+
+        int[] removedSlots = new int[excludedWordIds.size() + count];
+        int numRemoved = 0;
+        try {
+            for (Long wordId : excludedWordIds) {
+                Integer slot = mSlots.get(wordId);
+                if (slot != null && mActive[slot]) {
+                    deactivate(slot);
+                    removedSlots[numRemoved++] = slot;
+                }
+            }
+
+            long[] wordIds = new long[count];
+            int numDrawn = 0;
+            while (numDrawn < count) {
+                int slot = draw(now, random);
+                if (slot == -1)
+                    break;
+
+                wordIds[numDrawn++] = mWordIds[slot];
+                deactivate(slot);
+                removedSlots[numRemoved++] = slot;
+            }
+
+            return copyOf(wordIds, numDrawn);
+        } finally {
+            for (int i = 0; i < numRemoved; i++)
+                activate(removedSlots[i]);
+        }
+    }
+
+    // Returns a random active slot, or -1 if there are none.
+    private int draw(long now, Random random) {
+        long totalWeight = weight(mCapacity, now);
+        if (totalWeight <= 0)
+            return -1;
+
+        // Find the slot whose cumulative weight range contains target, by
+        // descending the Fenwick tree.
+        long target = random.nextLong(totalWeight);
+        int pos = 0;
+        for (int step = mCapacity; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next > mCapacity)
+                continue;
+
+            long w = mCountTree[next] * now - mSumTree[next];
+            if (w <= target) {
+                target -= w;
+                pos = next;
+            }
+        }
+
+        return pos;
+    }
+
+    private void schedule(int slot, long nextPractice, long lastPractice) {
+        deactivate(slot);
+
+        long eligibleAt = Math.max(nextPractice + 1, lastPractice + MIN_PRACTICE_GAP + 1);
+        mNextPractice[slot] = nextPractice;
+        mLastPractice[slot] = lastPractice;
+        mEligibleAt[slot] = eligibleAt;
+        mPending.add(new Pending(eligibleAt, slot));
+    }
+
+    private void activateEligible(long now) {
+        Pending p;
+        while ((p = mPending.peek()) != null && p.eligibleAt <= now) {
+            mPending.poll();
+            // Skip the stale entries left behind by schedule() and remove().
+            if (mEligibleAt[p.slot] == p.eligibleAt && !mActive[p.slot])
+                activate(p.slot);
+        }
+    }
+
+    private void activate(int slot) {
+        mActive[slot] = true;
+        add(slot, 1, mNextPractice[slot]);
+    }
+
+    private void deactivate(int slot) {
+        if (!mActive[slot])
+            return;
+
+        mActive[slot] = false;
+        add(slot, -1, -mNextPractice[slot]);
+    }
+
+    private void add(int slot, long count, long sum) {
+        for (int i = slot + 1; i <= mCapacity; i += i & -i) {
+            mCountTree[i] += count;
+            mSumTree[i] += sum;
+        }
+    }
+
+    // The total weight of the first n slots.
+    private long weight(int n, long now) {
+        long count = 0;
+        long sum = 0;
+        for (int i = n; i > 0; i -= i & -i) {
+            count += mCountTree[i];
+            sum += mSumTree[i];
+        }
+        return count * now - sum;
+    }
+
+    private int allocateSlot() {
+        if (mNumFreeSlots > 0)
+            return mFreeSlots[--mNumFreeSlots];
+
+        if (mNumSlots == mCapacity)
+            allocate(mCapacity * 2);
+
+        return mNumSlots++;
+    }
+
+    // Resizes all the arrays to newCapacity (which must be a power of two),
+    // and rebuilds the Fenwick trees.
+    private void allocate(int newCapacity) {
+        mWordIds = copyOf(mWordIds, newCapacity);
+        mNextPractice = copyOf(mNextPractice, newCapacity);
+        mLastPractice = copyOf(mLastPractice, newCapacity);
+
+        long[] eligibleAt = new long[newCapacity];
+        Arrays.fill(eligibleAt, Long.MAX_VALUE);
+        if (mEligibleAt != null)
+            System.arraycopy(mEligibleAt, 0, eligibleAt, 0, mCapacity);
+        mEligibleAt = eligibleAt;
+
+        boolean[] active = new boolean[newCapacity];
+        if (mActive != null)
+            System.arraycopy(mActive, 0, active, 0, mCapacity);
+        mActive = active;
+
+        int[] freeSlots = new int[newCapacity];
+        if (mFreeSlots != null)
+            System.arraycopy(mFreeSlots, 0, freeSlots, 0, mNumFreeSlots);
+        mFreeSlots = freeSlots;
+
+        mCapacity = newCapacity;
+        mCountTree = new long[newCapacity + 1];
+        mSumTree = new long[newCapacity + 1];
+        for (int slot = 0; slot < mNumSlots; slot++) {
+            if (mActive[slot])
+                add(slot, 1, mNextPractice[slot]);
+        }
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] result = new long[length];
+        if (array != null)
+            System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    private static class Pending implements Comparable<Pending> {
+        public final long eligibleAt;
+        public final int slot;
+
+        public Pending(long eligibleAt, int slot) {
+            this.eligibleAt = eligibleAt;
+            this.slot = slot;
+        }
+
+        public int compareTo(Pending that) {
+            if (this.eligibleAt < that.eligibleAt)
+                return -1;
+            if (this.eligibleAt > that.eligibleAt)
+                return 1;
+            return 0;
+        }
+    }
+}
@@ -16,18 +16,23 @@
 
 package ro.undef.patois;
 
-import android.app.Activity;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Environment;
 import android.util.Log;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 
@@ -35,12 +40,64 @@ public class Database {
     private final static String TAG = "Database";
 
     public static final String DATABASE_NAME = "patois.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final String ANSWER_JOURNAL_NAME = "answers.journal";
+    private static final int DATABASE_VERSION = 7;
 
-    private Activity mActivity;
+    private Context mContext;
     private DatabaseHelper mDbHelper;
     private SQLiteDatabase mDb;
-    private TreeMap<Long, Language> mLanguagesCache;
+    // Synchronized, since the Database is shared by all the threads of the
+    // process (see PatoisApplication and DatabaseExecutor).
+    private Map<Long, Language> mLanguagesCache;
+    // All the preferences, loaded when the database is opened, so reading
+    // them never touches SQLite (see setLongPreference() for the writes).
+    // Synchronized, like mLanguagesCache.
+    private Map<String, Long> mPreferences;
+
+    // Precompiled statements for the most frequent writes.  They are compiled
+    // when the database is opened, and shared by all the threads: they are
+    // only used inside runInTransaction(), which holds the database lock
+    // until the statements are done.
+    private SQLiteStatement mInsertTranslationStatement;
+    private SQLiteStatement mInsertPracticeLogStatement;
+    private SQLiteStatement[] mUpdatePracticeInfoStatements;
+    private SQLiteStatement mResetPracticeInfoStatement;
+    private SQLiteStatement mChangesStatement;
+
+    // The practice candidates of each language, indexed by
+    // Trainer.Direction.getValue().  They are loaded on demand and then kept
+    // up-to-date by the methods that modify the words and translations.
+    // Since all the Database instances use the same database file, the pools
+    // are shared between them.
+    private static final HashMap<Long, CandidatePool[]> sCandidatePools =
+        new HashMap<Long, CandidatePool[]>();
+    // Incremented (under the sCandidatePools lock) whenever the loaded pools
+    // change, like sWordIndexesVersion.
+    private static long sCandidatePoolsVersion = 0;
+
+    // The autocompletion indexes of each language, keyed by language ID.
+    // Like the candidate pools, they are loaded on demand and shared between
+    // all the Database instances.
+    private static final HashMap<Long, WordIndex> sWordIndexes =
+        new HashMap<Long, WordIndex>();
+    // Incremented (under the sWordIndexes lock) whenever the loaded indexes
+    // change, so that an index loaded at the same time is not installed
+    // without those changes (see getWordIndex()).
+    private static long sWordIndexesVersion = 0;
+
+    // The lock of a cache must never be waited for while holding the SQLite
+    // database lock (i.e., inside a transaction): there is only one
+    // connection, so another thread could hold the cache lock while waiting
+    // for the transaction to finish.  So the caches are loaded without
+    // holding their locks, and the cache updates done by the writes inside
+    // runInTransaction() are queued here, and only applied once the
+    // outermost transaction of the thread commits.
+    private final ThreadLocal<ArrayList<Runnable>> mPendingCacheUpdates =
+        new ThreadLocal<ArrayList<Runnable>>();
+    // The words changed by the current transaction of the thread, queued
+    // with the cache updates when the first one is changed.
+    private final ThreadLocal<WordChanges> mPendingWordChanges =
+        new ThreadLocal<WordChanges>();
 
     private static class DatabaseHelper extends SQLiteOpenHelper {
 
@@ -57,10 +114,37 @@ public class Database {
                 db.execSQL(statement);
         }
 
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            // Use write-ahead logging, so that readers don't block writers and
+            // vice versa (e.g., while DatabaseSaver takes its snapshot).  The
+            // journal mode is persistent, so this is a no-op after the first
+            // time.  SQLite versions older than 3.7.0 (i.e., before Android
+            // 3.0) don't support WAL and keep using the rollback journal.
+            // SQLiteDatabase.enableWriteAheadLogging() is API level 11.
+            if (db.isReadOnly())
+                return;
+
+            Cursor cursor = db.rawQuery("PRAGMA journal_mode = WAL", null);
+            try {
+                if (cursor.moveToFirst() && !"wal".equalsIgnoreCase(cursor.getString(0)))
+                    Log.i(TAG, "Write-ahead logging not available, using journal mode " +
+                          cursor.getString(0));
+            } finally {
+                cursor.close();
+            }
+        }
+
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            // When we'll have a new version of the database, implement this
-            // method.
+            // SQLiteOpenHelper runs this in a transaction, so a failed upgrade
+            // leaves the database at oldVersion.
+            for (int version = oldVersion + 1; version <= newVersion; version++) {
+                Log.i(TAG, "Upgrading the database to version " + version);
+                for (String statement :
+                        readStatementsFromAsset("sql/upgrade-" + version + ".sql"))
+                    db.execSQL(statement);
+            }
         }
 
         private ArrayList<String> readStatementsFromAsset(String fileName) {
@@ -69,33 +153,7 @@ public class Database {
                         new InputStreamReader(mCtx.getAssets().open(fileName)), 4096);
 
                 try {
-                    String eol = System.getProperty("line.separator");
-                    ArrayList<String> schema = new ArrayList<String>();
-                    StringBuilder statement = new StringBuilder("");
-                    String line;
-
-                    while ((line = in.readLine()) != null) {
-                        String trimmed = line.trim();
-
-                        // Ignore comments.
-                        if (trimmed.startsWith("--"))
-                            continue;
-
-                        // Empty lines terminate statements.
-                        if (trimmed.length() == 0) {
-                            if (statement.length() != 0)
-                                schema.add(statement.toString());
-                            statement.setLength(0);
-                            continue;
-                        }
-
-                        statement.append(line);
-                        statement.append(eol);  // readLine() strips the EOL characters.
-                    }
-                    if (statement.length() != 0)
-                        schema.add(statement.toString());
-
-                    return schema;
+                    return DatabaseQueries.readStatements(in);
                 } finally {
                     in.close();
                 }
@@ -105,16 +163,192 @@ public class Database {
         }
     }
 
-    Database(Activity activity) {
-        mActivity = activity;
-        mDbHelper = new DatabaseHelper(mActivity.getApplicationContext());
+    // Use PatoisApplication.acquireDatabase() instead.
+    Database(Context context) {
+        mContext = context.getApplicationContext();
+        mLanguagesCache = Collections.synchronizedMap(new TreeMap<Long, Language>());
+        mPreferences = Collections.synchronizedMap(new HashMap<String, Long>());
+        open();
+    }
+
+    void open() {
+        mDbHelper = new DatabaseHelper(mContext);
         mDb = mDbHelper.getWritableDatabase();
-        mLanguagesCache = new TreeMap<Long, Language>();
+        compileStatements();
+        loadPreferences();
+        DatabaseMetrics.setEnabled(getMetricsEnabled());
     }
 
-    public void close() {
+    void close() {
+        closeStatements();
         mDbHelper.close();
         mLanguagesCache.clear();
+        mPreferences.clear();
+    }
+
+    // Like PatoisApplication.acquireDatabase(), for the callers which only
+    // have a Database at hand.  The result must be released separately.
+    public Database acquire() {
+        return PatoisApplication.acquireDatabase(mContext);
+    }
+
+    // Tells PatoisApplication that the caller is done with the database.
+    public void release() {
+        ((PatoisApplication) mContext).releaseDatabase(this);
+    }
+
+    // The file where Trainer keeps the answers that were not saved yet.
+    public File getAnswerJournalFile() {
+        return new File(mContext.getFilesDir(), ANSWER_JOURNAL_NAME);
+    }
+
+    // Runs all the database writes done by runnable in a single transaction,
+    // so they cost a single commit instead of one for each statement.  If
+    // runnable throws, the transaction is rolled back and the exception is
+    // propagated.  Calls to runInTransaction() can be nested.
+    public void runInTransaction(Runnable runnable) {
+        ArrayList<Runnable> pendingCacheUpdates = mPendingCacheUpdates.get();
+        boolean outermost = (pendingCacheUpdates == null);
+        if (outermost) {
+            pendingCacheUpdates = new ArrayList<Runnable>();
+            mPendingCacheUpdates.set(pendingCacheUpdates);
+        }
+
+        boolean successful = false;
+        mDb.beginTransaction();
+        try {
+            runnable.run();
+            mDb.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            mDb.endTransaction();
+            if (outermost) {
+                mPendingCacheUpdates.remove();
+                mPendingWordChanges.remove();
+            }
+
+            // Some of the caches (e.g., the candidate pools, updated by
+            // updateCandidatePools()) are changed ahead of the writes.
+            if (!successful)
+                invalidateCaches();
+        }
+
+        if (outermost) {
+            for (Runnable update : pendingCacheUpdates)
+                update.run();
+        }
+    }
+
+    // Runs update right away, or once the current transaction commits if
+    // called from inside runInTransaction().
+    private void updateCacheAfterCommit(Runnable update) {
+        ArrayList<Runnable> pendingCacheUpdates = mPendingCacheUpdates.get();
+        if (pendingCacheUpdates != null)
+            pendingCacheUpdates.add(update);
+        else
+            update.run();
+    }
+
+    private void compileStatements() {
+        mInsertTranslationStatement = mDb.compileStatement(
+                "INSERT OR IGNORE INTO translations (word_id1, word_id2) VALUES (?, ?)");
+        mInsertPracticeLogStatement = mDb.compileStatement(
+                "INSERT INTO practice_log (" +
+                "    trainer, word_id, direction, successful, timestamp" +
+                ") VALUES (?, ?, ?, ?, ?)");
+
+        Trainer.Direction[] directions = Trainer.Direction.values();
+        mUpdatePracticeInfoStatements = new SQLiteStatement[directions.length];
+        for (Trainer.Direction d : directions) {
+            mUpdatePracticeInfoStatements[d.getValue()] = mDb.compileStatement(
+                    "UPDATE words SET " +
+                    "    level" + d.getSuffix() + " = ?, " +
+                    "    last_practice" + d.getSuffix() + " = ?, " +
+                    "    next_practice" + d.getSuffix() + " = ? " +
+                    "  WHERE _id == ? AND last_practice" + d.getSuffix() + " < ?");
+        }
+
+        mResetPracticeInfoStatement = mDb.compileStatement(
+                "UPDATE words SET " +
+                "    level_to = 0, " +
+                "    next_practice_to = ?, " +
+                "    level_from = 0, " +
+                "    next_practice_from = ? " +
+                "  WHERE _id == ?");
+        mChangesStatement = mDb.compileStatement("SELECT changes()");
+    }
+
+    private void closeStatements() {
+        if (mInsertTranslationStatement != null)
+            mInsertTranslationStatement.close();
+        if (mInsertPracticeLogStatement != null)
+            mInsertPracticeLogStatement.close();
+        if (mUpdatePracticeInfoStatements != null) {
+            for (SQLiteStatement statement : mUpdatePracticeInfoStatements)
+                statement.close();
+        }
+        if (mResetPracticeInfoStatement != null)
+            mResetPracticeInfoStatement.close();
+        if (mChangesStatement != null)
+            mChangesStatement.close();
+
+        mInsertTranslationStatement = null;
+        mInsertPracticeLogStatement = null;
+        mUpdatePracticeInfoStatements = null;
+        mResetPracticeInfoStatement = null;
+        mChangesStatement = null;
+    }
+
+    // Returns the number of rows changed by the last INSERT, UPDATE or DELETE.
+    // SQLiteStatement.executeUpdateDelete() would tell us that directly, but
+    // it's only available starting with API level 11.
+    private long getNumChanges() {
+        return mChangesStatement.simpleQueryForLong();
+    }
+
+    // Drops all the in-memory data derived from the database file.  This must
+    // be called after the database file is replaced behind our back (e.g.,
+    // when restoring a backup).
+    public static void invalidateCaches() {
+        synchronized (sCandidatePools) {
+            sCandidatePools.clear();
+            sCandidatePoolsVersion++;
+        }
+        synchronized (sWordIndexes) {
+            sWordIndexes.clear();
+            sWordIndexesVersion++;
+        }
+    }
+
+    // Returns the WordChanges to record a change in.  Inside
+    // runInTransaction(), it's the one of the transaction, which tells the
+    // WordObservers about the changes once it commits.  Otherwise, the
+    // caller has to run() it after the change.
+    private WordChanges getWordChanges() {
+        if (mPendingCacheUpdates.get() == null)
+            return new WordChanges();
+
+        WordChanges changes = mPendingWordChanges.get();
+        if (changes == null) {
+            changes = new WordChanges();
+            mPendingWordChanges.set(changes);
+            updateCacheAfterCommit(changes);
+        }
+        return changes;
+    }
+
+    private void notifyWordChanged(long wordId) {
+        WordChanges changes = getWordChanges();
+        changes.wordChanged(wordId);
+        if (mPendingCacheUpdates.get() == null)
+            changes.run();
+    }
+
+    private void notifyWordDeleted(long wordId) {
+        WordChanges changes = getWordChanges();
+        changes.wordDeleted(wordId);
+        if (mPendingCacheUpdates.get() == null)
+            changes.run();
     }
 
     public static final int LANGUAGES_ID_COLUMN = 0;
@@ -122,18 +356,18 @@ public class Database {
     public static final int LANGUAGES_NAME_COLUMN = 2;
 
     public Cursor getLanguagesCursor() {
-        Cursor cursor = getExportLanguagesCursor();
-        mActivity.startManagingCursor(cursor);
-        return cursor;
+        return getExportLanguagesCursor();
     }
 
     public Cursor getExportLanguagesCursor() {
-        Cursor cursor = mDb.query("languages", new String[] { "_id", "code", "name" },
-                                  null, null, null, null, null);
+        long start = DatabaseMetrics.start();
+        Cursor cursor = mDb.rawQuery(DatabaseQueries.LANGUAGES_QUERY, null);
+        DatabaseMetrics.end("getExportLanguagesCursor", start, -1);
         return cursor;
     }
 
     public ArrayList<Language> getLanguages() {
+        long start = DatabaseMetrics.start();
         ArrayList<Language> languages = new ArrayList<Language>();
 
         Cursor cursor = mDb.query("languages", new String[] { "_id", "code", "name", "num_words" },
@@ -149,6 +383,7 @@ public class Database {
             cursor.close();
         }
 
+        DatabaseMetrics.end("getLanguages", start, languages.size());
         return languages;
     }
 
@@ -157,6 +392,8 @@ public class Database {
         if (language != null)
             return language;
 
+        // Only the cache misses are recorded.
+        long start = DatabaseMetrics.start();
         Cursor cursor = mDb.query("languages", new String[] { "code", "name", "num_words" },
                                   "_id == ?", new String[] { Long.toString(id) },
                                   null, null, null);
@@ -172,10 +409,12 @@ public class Database {
             return language;
         } finally {
             cursor.close();
+            DatabaseMetrics.end("getLanguage", start, language != null ? 1 : 0);
         }
     }
 
     public boolean insertLanguage(Language language) {
+        long start = DatabaseMetrics.start();
         mLanguagesCache.put(language.getId(), language);
 
         ContentValues values = new ContentValues();
@@ -185,25 +424,37 @@ public class Database {
         long id = mDb.insert("languages", null, values);
         language.setId(id);
 
+        DatabaseMetrics.end("insertLanguage", start, id != -1 ? 1 : 0);
         return id != -1;
     }
 
     public boolean updateLanguage(Language language) {
+        long start = DatabaseMetrics.start();
         mLanguagesCache.put(language.getId(), language);
 
         ContentValues values = new ContentValues();
         values.put("code", language.getCode());
         values.put("name", language.getName());
 
-        return mDb.update("languages", values, "_id == ?",
-                          new String[] { language.getIdString() }) == 1;
+        boolean updated = mDb.update("languages", values, "_id == ?",
+                                     new String[] { language.getIdString() }) == 1;
+        DatabaseMetrics.end("updateLanguage", start, updated ? 1 : 0);
+        return updated;
     }
 
     public boolean deleteLanguage(Language language) {
+        long start = DatabaseMetrics.start();
         mLanguagesCache.remove(language.getId());
 
-        return mDb.delete("languages", "_id == ?",
-                          new String[] { language.getIdString() }) == 1;
+        boolean deleted = mDb.delete("languages", "_id == ?",
+                                     new String[] { language.getIdString() }) == 1;
+
+        // Deleting the words in this language also deletes their
+        // translations, which can affect the candidates of any language.
+        invalidateCaches();
+
+        DatabaseMetrics.end("deleteLanguage", start, deleted ? 1 : 0);
+        return deleted;
     }
 
     public void clearLanguagesCache() {
@@ -214,145 +465,356 @@ public class Database {
     public static final String BROWSE_WORDS_NAME_COLUMN = "display_name";
     public static final String BROWSE_WORDS_TRANSLATIONS_COLUMN = "display_translations";
     public static final String BROWSE_WORDS_DUMMY_SCORE_COLUMN = "sort_level";
-    public static final int BROWSE_WORDS_LEVEL_FROM_COLUMN_ID = 5;
-    public static final int BROWSE_WORDS_NEXT_PRACTICE_FROM_COLUMN_ID = 6;
-    public static final int BROWSE_WORDS_LEVEL_TO_COLUMN_ID = 7;
-    public static final int BROWSE_WORDS_NEXT_PRACTICE_TO_COLUMN_ID = 8;
-
+    public static final int BROWSE_WORDS_ID_COLUMN_ID = BrowseQuery.ID_COLUMN_ID;
+    public static final int BROWSE_WORDS_LEVEL_FROM_COLUMN_ID = BrowseQuery.LEVEL_FROM_COLUMN_ID;
+    public static final int BROWSE_WORDS_NEXT_PRACTICE_FROM_COLUMN_ID =
+        BrowseQuery.NEXT_PRACTICE_FROM_COLUMN_ID;
+    public static final int BROWSE_WORDS_LEVEL_TO_COLUMN_ID = BrowseQuery.LEVEL_TO_COLUMN_ID;
+    public static final int BROWSE_WORDS_NEXT_PRACTICE_TO_COLUMN_ID =
+        BrowseQuery.NEXT_PRACTICE_TO_COLUMN_ID;
+
+    // The number of rows loaded at a time by the browse cursor.
+    private static final int BROWSE_WORDS_PAGE_SIZE = 200;
+
+    // Returns a PagedCursor over the words matching filter, which loads
+    // them one page at a time.  The first page is loaded right away, so this
+    // should be called from a background thread.
     public Cursor getBrowseWordsCursor(Language language, String filter) {
-        String pattern = "%" + filter + "%";
-        String sortCriteria = "_id";
-
-        switch (getSortOrder()) {
-            case SORT_ORDER_BY_NAME:
-                sortCriteria = "sort_name ASC";
-                break;
-            case SORT_ORDER_BY_SCORE:
-                sortCriteria = "sort_next_practice ASC, sort_level ASC";
-                break;
-            case SORT_ORDER_NEWEST_FIRST:
-                sortCriteria = "timestamp DESC";
-                break;
-            case SORT_ORDER_OLDEST_FIRST:
-                sortCriteria = "timestamp ASC";
-                break;
+        long start = DatabaseMetrics.start();
+        String languageId = language.getIdString();
+        int sortOrder = getSortOrder();
+        BrowseWordsLoader loader = null;
+
+        // Look up the words starting with the filter in the full-text index
+        // first, and only fall back to the (much slower) substring search if
+        // that doesn't find anything.
+        BrowseQuery query = BrowseQuery.forPrefixMatch(languageId, filter, sortOrder);
+        if (query != null) {
+            loader = new BrowseWordsLoader(query);
+            if (loader.getCount() == 0)
+                loader = null;
         }
 
-        Cursor cursor = mDb.rawQuery(
-                "SELECT " +
-                "    t.word_id1 AS _id, " +
-                // Simple escaping for BrowseWordsActivity.applyWordMarkup().
-                "    replace(w1.name, '.', '..') AS display_name, " +
-                "    group_concat( " +
-                "      replace(w2.name, '.', '..') || ' .c(' || " +
-                "      replace(l.code, '.', '..')  || ').C', '  ') AS display_translations, " +
-                "    lower(w1.name) AS sort_name, " +
-                "    w1.timestamp AS timestamp, " +
-                "    w1.level_from AS level_from, " +
-                "    w1.next_practice_from AS next_practice_from, " +
-                "    w1.level_to AS level_to, " +
-                "    w1.next_practice_to AS next_practice_to, " +
-                "    min(w1.level_from, w1.level_to) AS sort_level, " +
-                "    min(w1.next_practice_from, w1.next_practice_to) AS sort_next_practice " +
-                "  FROM " +
-                "    translations AS t, " +
-                "    words AS w1, " +
-                "    words AS w2, " +
-                "    languages AS l " +
-                "  WHERE " +
-                "    w1.language_id == ? AND " +
-                "    ((w1.name LIKE ?) OR (w2.name LIKE ?)) AND " +
-                "    t.word_id1 == w1._id AND " +
-                "    t.word_id2 == w2._id AND " +
-                "    w2.language_id == l._id " +
-                "  GROUP BY (t.word_id1) " +
-                "UNION " +
-                "SELECT " +
-                "    w._id AS _id, " +
-                "    '.u' || replace(w.name, '.', '..') || '.U' AS display_name, " +
-                "    '.c.0.C' AS display_translations, " +
-                "    lower(w.name) AS sort_name, " +
-                "    w.timestamp AS timestamp, " +
-                "    0 AS level_from, " +
-                "    0 AS next_practice_from, " +
-                "    0 AS level_to, " +
-                "    0 AS next_practice_to, " +
-                "    0 AS sort_level, " +
-                "    0 AS sort_next_practice " +
-                "  FROM " +
-                "    words AS w " +
-                "  WHERE " +
-                "    w.language_id == ? AND " +
-                "    w.name LIKE ? AND " +
-                "    w.num_translations == 0 " +
-                "ORDER BY " + sortCriteria,
-                new String[] {
-                    language.getIdString(),
-                    pattern,
-                    pattern,
-                    language.getIdString(),
-                    pattern,
-                });
-        mActivity.startManagingCursor(cursor);
+        if (loader == null && filter.length() > 0)
+            loader = new BrowseWordsLoader(
+                    BrowseQuery.forSubstring(languageId, filter, sortOrder));
+
+        if (loader == null)
+            loader = new BrowseWordsLoader(BrowseQuery.forLanguage(languageId, sortOrder));
+
+        Cursor cursor = new PagedCursor(BrowseQuery.COLUMNS, BrowseQuery.TEXT_COLUMNS,
+                                        BROWSE_WORDS_PAGE_SIZE, loader);
+        cursor.moveToFirst();
 
+        DatabaseMetrics.end("getBrowseWordsCursor", start, cursor.getCount());
         return cursor;
     }
 
+    // Loads the pages of getBrowseWordsCursor(), using the queries built by
+    // a BrowseQuery.
+    private class BrowseWordsLoader implements PagedCursor.PageLoader {
+        private BrowseQuery mQuery;
+
+        public BrowseWordsLoader(BrowseQuery query) {
+            mQuery = query;
+        }
+
+        // The count is taken again whenever the cursor is requeried.
+        public int getCount() {
+            Cursor cursor = mDb.rawQuery(mQuery.getCountQuery(), mQuery.getCountArgs());
+            try {
+                return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        public Cursor loadPage(Object[] lastRow, int offset, int limit) {
+            ArrayList<String> args = new ArrayList<String>();
+            String sql = mQuery.getPageQuery(lastRow, offset, limit, args);
+            return mDb.rawQuery(sql, args.toArray(new String[args.size()]));
+        }
+
+        public Cursor loadRow(long id) {
+            ArrayList<String> args = new ArrayList<String>();
+            String sql = mQuery.getRowQuery(id, args);
+            return mDb.rawQuery(sql, args.toArray(new String[args.size()]));
+        }
+    }
+
     public static final String WORDS_NAME_COLUMN = "name";
     public static final int WORDS_NAME_COLUMN_ID = 1;
 
+    // The maximum number of autocompletion suggestions.
+    private static final int MAX_SUGGESTIONS = 50;
+
     public Cursor getWordsCursor(Language language, String filter, Word mainWord) {
+        long start = DatabaseMetrics.start();
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "name" });
+
         // We want to avoid suggesting the main word as a translation of
         // itself, so we have to explicitly filter it out here.
-        Cursor cursor = mDb.query("words", new String[] { "_id", "name" },
-                                  "(language_id == ?) AND (name LIKE ?) AND (_id != ?)",
+        for (WordIndex.Entry entry :
+                getWordIndex(language).find(filter, mainWord.getId(), MAX_SUGGESTIONS))
+            cursor.addRow(new Object[] { entry.wordId, entry.name });
+
+        DatabaseMetrics.end("getWordsCursor", start, cursor.getCount());
+        return cursor;
+    }
+
+    // The index is loaded without holding the sWordIndexes lock (see
+    // mPendingCacheUpdates), and only installed if no words were reindexed
+    // in the meantime; otherwise, it's loaded again.
+    private WordIndex getWordIndex(Language language) {
+        while (true) {
+            long version;
+            synchronized (sWordIndexes) {
+                WordIndex index = sWordIndexes.get(language.getId());
+                if (index != null)
+                    return index;
+                version = sWordIndexesVersion;
+            }
+
+            WordIndex index = loadWordIndex(language);
+
+            synchronized (sWordIndexes) {
+                if (version == sWordIndexesVersion) {
+                    // Another thread might have loaded it first.
+                    WordIndex loaded = sWordIndexes.get(language.getId());
+                    if (loaded != null)
+                        return loaded;
+
+                    sWordIndexes.put(language.getId(), index);
+                    return index;
+                }
+            }
+        }
+    }
+
+    private WordIndex loadWordIndex(Language language) {
+        HashMap<Long, String> names = new HashMap<Long, String>();
+
+        Cursor cursor = mDb.rawQuery(DatabaseQueries.WORD_INDEX_QUERY,
+                                     new String[] { language.getIdString() });
+        try {
+            while (cursor.moveToNext())
+                names.put(cursor.getLong(0), cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+
+        WordIndex index = new WordIndex();
+        index.addAll(names);
+        return index;
+    }
+
+    // Brings the loaded word indexes up-to-date after the word was inserted,
+    // renamed, moved to another language, or deleted (when word is null).
+    private void reindexWord(final long wordId, Word word) {
+        // The word might be changed by the caller before the update runs.
+        final long languageId = (word != null) ? word.getLanguage().getId() : -1;
+        final String name = (word != null) ? word.getName() : null;
+
+        updateCacheAfterCommit(new Runnable() {
+            public void run() {
+                synchronized (sWordIndexes) {
+                    for (WordIndex index : sWordIndexes.values())
+                        index.remove(wordId);
+
+                    if (name != null) {
+                        WordIndex index = sWordIndexes.get(languageId);
+                        if (index != null)
+                            index.add(wordId, name);
+                    }
+                    sWordIndexesVersion++;
+                }
+            }
+        });
+    }
+
+    public CandidatePool getCandidatePool(Language language, Trainer.Direction direction) {
+        long start = DatabaseMetrics.start();
+        CandidatePool[] pools = getCandidatePools(language);
+        DatabaseMetrics.end("getCandidatePool", start, -1);
+        return pools[direction.getValue()];
+    }
+
+    // Like getWordIndex(), the pools are loaded without holding the
+    // sCandidatePools lock, and loaded again if they changed in the meantime.
+    private CandidatePool[] getCandidatePools(Language language) {
+        while (true) {
+            long version;
+            synchronized (sCandidatePools) {
+                CandidatePool[] pools = sCandidatePools.get(language.getId());
+                if (pools != null)
+                    return pools;
+                version = sCandidatePoolsVersion;
+            }
+
+            CandidatePool[] pools = loadCandidatePools(language);
+
+            synchronized (sCandidatePools) {
+                if (version == sCandidatePoolsVersion) {
+                    CandidatePool[] loaded = sCandidatePools.get(language.getId());
+                    if (loaded != null)
+                        return loaded;
+
+                    sCandidatePools.put(language.getId(), pools);
+                    return pools;
+                }
+            }
+        }
+    }
+
+    private CandidatePool[] loadCandidatePools(Language language) {
+        CandidatePool[] pools = new CandidatePool[Trainer.Direction.values().length];
+        for (int i = 0; i < pools.length; i++)
+            pools[i] = new CandidatePool();
+
+        Cursor cursor = mDb.query("words",
                                   new String[] {
-                                      language.getIdString(),
-                                      "%" + filter + "%",
-                                      mainWord.getIdString(),
+                                      "_id",
+                                      "next_practice_from",
+                                      "next_practice_to",
+                                      "max(last_practice_from, last_practice_to)",
                                   },
+                                  "language_id == ? AND num_translations > 0",
+                                  new String[] { language.getIdString() },
                                   null, null, null);
-        mActivity.startManagingCursor(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                long lastPractice = cursor.getLong(3);
+                pools[Trainer.Direction.FROM_FOREIGN.getValue()].put(
+                        id, cursor.getLong(1), lastPractice);
+                pools[Trainer.Direction.TO_FOREIGN.getValue()].put(
+                        id, cursor.getLong(2), lastPractice);
+            }
+        } finally {
+            cursor.close();
+        }
 
-        return cursor;
+        return pools;
     }
 
-    public ArrayList<Trainer.Weight> getWordWeights(Language language,
-                                                    Trainer.Direction direction) {
-        ArrayList<Trainer.Weight> weights = new ArrayList<Trainer.Weight>();
+    // Re-reads the practice data of a word and updates the candidate pools
+    // accordingly, once the current transaction (if any) commits.  This is a
+    // no-op if no pools are loaded.
+    private void refreshCandidate(final long wordId) {
+        updateCacheAfterCommit(new Runnable() {
+            public void run() {
+                if (hasCandidatePools())
+                    reloadCandidate(wordId);
+            }
+        });
+    }
 
-        Cursor cursor = mDb.rawQuery(
-                "SELECT " +
-                "    _id, " +
-                "    strftime('%s', 'now') - next_practice" + direction.getSuffix() +
-                "        AS weight " +
-                "  FROM " +
-                "    words " +
-                "  WHERE " +
-                "    language_id == ? AND " +
-                "    weight > 0 AND " +
-                "    num_translations > 0 AND " +
-                "    last_practice_from < strftime('%s', 'now') - 3600 AND " +
-                "    last_practice_to < strftime('%s', 'now') - 3600 ",
-                new String[] {
-                    language.getIdString(),
-                });
+    private void reloadCandidate(long wordId) {
+        // Read without holding the sCandidatePools lock (see
+        // mPendingCacheUpdates).
+        long languageId = -1;
+        long nextPracticeFrom = 0;
+        long nextPracticeTo = 0;
+        long lastPractice = 0;
 
+        Cursor cursor = mDb.query("words",
+                                  new String[] {
+                                      "language_id",
+                                      "next_practice_from",
+                                      "next_practice_to",
+                                      "max(last_practice_from, last_practice_to)",
+                                  },
+                                  "_id == ? AND num_translations > 0",
+                                  new String[] { Long.toString(wordId) },
+                                  null, null, null);
         try {
-            while (cursor.moveToNext())
-                weights.add(new Trainer.Weight(cursor.getLong(0), cursor.getLong(1)));
+            if (cursor.moveToFirst()) {
+                languageId = cursor.getLong(0);
+                nextPracticeFrom = cursor.getLong(1);
+                nextPracticeTo = cursor.getLong(2);
+                lastPractice = cursor.getLong(3);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (sCandidatePools) {
+            // The word might have moved to a different language.
+            for (CandidatePool[] pools : sCandidatePools.values()) {
+                for (CandidatePool pool : pools)
+                    pool.remove(wordId);
+            }
+
+            // The word is gone, or has no translations anymore.
+            CandidatePool[] pools = (languageId != -1) ? sCandidatePools.get(languageId) : null;
+            if (pools != null) {
+                pools[Trainer.Direction.FROM_FOREIGN.getValue()].put(
+                        wordId, nextPracticeFrom, lastPractice);
+                pools[Trainer.Direction.TO_FOREIGN.getValue()].put(
+                        wordId, nextPracticeTo, lastPractice);
+            }
+            sCandidatePoolsVersion++;
+        }
+    }
+
+    private boolean hasCandidatePools() {
+        synchronized (sCandidatePools) {
+            return !sCandidatePools.isEmpty();
+        }
+    }
+
+    // Returns the practice statistics of the given language.  This only
+    // reads the practice_stats rows of the language, so it doesn't depend
+    // on the number of words.
+    public PracticeStats getPracticeStats(Language language) {
+        long start = DatabaseMetrics.start();
+        PracticeStats stats = new PracticeStats(System.currentTimeMillis() / 1000);
+        int numRows = 0;
+
+        Cursor cursor = mDb.query("practice_stats",
+                                  new String[] {
+                                      "direction",
+                                      "level",
+                                      "due_day",
+                                      "num_words",
+                                  },
+                                  "language_id == ?",
+                                  new String[] { language.getIdString() },
+                                  null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                stats.add(Trainer.Direction.fromValue(cursor.getInt(0)),
+                          cursor.getInt(1), cursor.getLong(2), cursor.getInt(3));
+                numRows++;
+            }
         } finally {
             cursor.close();
         }
 
-        return weights;
+        DatabaseMetrics.end("getPracticeStats", start, numRows);
+        return stats;
     }
 
+    public static final int EXPORT_WORDS_ID_COLUMN = 0;
+    public static final int EXPORT_WORDS_LANGUAGE_CODE_COLUMN = 1;
+    public static final int EXPORT_WORDS_NAME_COLUMN = 2;
+    public static final int EXPORT_WORDS_TRANSLATION_LANGUAGE_CODE_COLUMN = 3;
+    public static final int EXPORT_WORDS_TRANSLATION_NAME_COLUMN = 4;
+
+    // Returns all the words together with their translations, one row per
+    // (word, translation) pair.  Words without translations get a single row,
+    // with NULL translation columns.  The rows of each word are consecutive,
+    // so the caller can stream through them without any further queries.
     public Cursor getExportWordsCursor() {
-        return mDb.query("words", new String[] { "_id" }, "", null, null, null, "language_id");
+        long start = DatabaseMetrics.start();
+        Cursor cursor = mDb.rawQuery(DatabaseQueries.EXPORT_WORDS_QUERY, null);
+        DatabaseMetrics.end("getExportWordsCursor", start, -1);
+        return cursor;
     }
 
     public Word getWord(long id) {
+        long start = DatabaseMetrics.start();
+        int numRows = 0;
         Cursor cursor = mDb.query("words",
                                   new String[] { "name", "language_id", },
                                   "_id == ?", new String[] { Long.toString(id) },
@@ -362,16 +824,19 @@ public class Database {
                 return null;
 
             cursor.moveToFirst();
+            numRows = 1;
             return new Word(id, cursor.getString(0), getLanguage(cursor.getLong(1)));
         } finally {
             cursor.close();
+            DatabaseMetrics.end("getWord", start, numRows);
         }
     }
 
     public boolean insertWord(Word word) {
+        long start = DatabaseMetrics.start();
         final int level = 0;
         final long now = System.currentTimeMillis() / 1000;
-        final long nextPractice = Trainer.scheduleNextPractice(now, level);
+        final long nextPractice = PracticeSchedule.scheduleNextPractice(now, level);
 
         ContentValues values = new ContentValues();
         values.put("name", word.getName());
@@ -384,58 +849,131 @@ public class Database {
 
         long id = mDb.insert("words", null, values);
         word.setId(id);
+        if (id != -1) {
+            reindexWord(id, word);
+            notifyWordChanged(id);
+        }
+
+        DatabaseMetrics.end("insertWord", start, id != -1 ? 1 : 0);
         return id != -1;
     }
 
     public boolean updateWord(Word word) {
+        long start = DatabaseMetrics.start();
         ContentValues values = new ContentValues();
         values.put("name", word.getName());
         values.put("language_id", word.getLanguage().getId());
 
-        return mDb.update("words", values, "_id == ?",
-                          new String[] { word.getIdString() }) == 1;
+        boolean updated = mDb.update("words", values, "_id == ?",
+                                     new String[] { word.getIdString() }) == 1;
+        if (updated) {
+            reindexWord(word.getId(), word);
+            notifyWordChanged(word.getId());
+        }
+        refreshCandidate(word.getId());
+
+        DatabaseMetrics.end("updateWord", start, updated ? 1 : 0);
+        return updated;
     }
 
     public boolean deleteWord(Word word) {
-        return mDb.delete("words", "_id == ?",
-                          new String[] { word.getIdString() }) == 1;
+        return deleteWordById(word.getId());
     }
 
     public boolean deleteWordById(long id) {
-        return mDb.delete("words", "_id == ?",
-                          new String[] { Long.toString(id) }) == 1;
+        long start = DatabaseMetrics.start();
+
+        // Deleting the word also deletes its translations, so the translated
+        // words might stop being practice candidates.
+        ArrayList<Long> translationIds = null;
+        if (hasCandidatePools())
+            translationIds = getTranslationIds(id);
+
+        boolean deleted = mDb.delete("words", "_id == ?",
+                                     new String[] { Long.toString(id) }) == 1;
+        if (deleted)
+            reindexWord(id, null);
+
+        if (translationIds != null) {
+            refreshCandidate(id);
+            for (long translationId : translationIds)
+                refreshCandidate(translationId);
+        }
+
+        if (deleted)
+            notifyWordDeleted(id);
+
+        DatabaseMetrics.end("deleteWordById", start, deleted ? 1 : 0);
+        return deleted;
     }
 
-    public ArrayList<Word> getTranslations(Word word) {
-        ArrayList<Word> translations = new ArrayList<Word>();
+    private ArrayList<Long> getTranslationIds(long wordId) {
+        ArrayList<Long> ids = new ArrayList<Long>();
 
         Cursor cursor = mDb.query("translations", new String[] { "word_id2" },
-                                  "word_id1 == ?", new String[] { word.getIdString() },
+                                  "word_id1 == ?", new String[] { Long.toString(wordId) },
                                   null, null, null);
         try {
             while (cursor.moveToNext())
-                translations.add(getWord(cursor.getLong(0)));
+                ids.add(cursor.getLong(0));
         } finally {
             cursor.close();
         }
 
-        return translations;
+        return ids;
     }
 
-    public void insertTranslation(Word word1, Word word2) {
-        ContentValues values = new ContentValues();
-        values.put("word_id1", word1.getId());
-        values.put("word_id2", word2.getId());
-        mDb.insert("translations", null, values);
+    public ArrayList<Word> getTranslations(Word word) {
+        long start = DatabaseMetrics.start();
+        ArrayList<Word> translations = new ArrayList<Word>();
 
-        values.clear();
-        values.put("word_id1", word2.getId());
-        values.put("word_id2", word1.getId());
-        mDb.insert("translations", null, values);
+        Cursor cursor = mDb.rawQuery(
+                "SELECT " +
+                "    w._id, " +
+                "    w.name, " +
+                "    w.language_id " +
+                "  FROM " +
+                "    translations AS t " +
+                "    JOIN words AS w ON w._id == t.word_id2 " +
+                "  WHERE " +
+                "    t.word_id1 == ?",
+                new String[] { word.getIdString() });
+        try {
+            while (cursor.moveToNext())
+                translations.add(new Word(cursor.getLong(0), cursor.getString(1),
+                                          getLanguage(cursor.getLong(2))));
+        } finally {
+            cursor.close();
+        }
+
+        DatabaseMetrics.end("getTranslations", start, translations.size());
+        return translations;
+    }
+
+    public void insertTranslation(final Word word1, final Word word2) {
+        long start = DatabaseMetrics.start();
+        runInTransaction(new Runnable() {
+            public void run() {
+                mInsertTranslationStatement.bindLong(1, word1.getId());
+                mInsertTranslationStatement.bindLong(2, word2.getId());
+                mInsertTranslationStatement.execute();
+
+                mInsertTranslationStatement.bindLong(1, word2.getId());
+                mInsertTranslationStatement.bindLong(2, word1.getId());
+                mInsertTranslationStatement.execute();
+
+                refreshCandidate(word1.getId());
+                refreshCandidate(word2.getId());
+                notifyWordChanged(word1.getId());
+                notifyWordChanged(word2.getId());
+            }
+        });
+        DatabaseMetrics.end("insertTranslation", start, 2);
     }
 
     public void deleteTranslation(Word word1, Word word2) {
-        mDb.delete("translations",
+        long start = DatabaseMetrics.start();
+        int numRows = mDb.delete("translations",
                    "(word_id1 == ? AND word_id2 == ?) OR (word_id1 == ? AND word_id2 == ?)",
                    new String[] {
                        word1.getIdString(),
@@ -443,9 +981,19 @@ public class Database {
                        word2.getIdString(),
                        word1.getIdString(),
                    });
+
+        refreshCandidate(word1.getId());
+        refreshCandidate(word2.getId());
+        if (numRows > 0) {
+            notifyWordChanged(word1.getId());
+            notifyWordChanged(word2.getId());
+        }
+        DatabaseMetrics.end("deleteTranslation", start, numRows);
     }
 
     public Trainer.PracticeInfo getPracticeInfo(Word word, Trainer.Direction direction) {
+        long start = DatabaseMetrics.start();
+        int numRows = 0;
         Cursor cursor = mDb.query("words",
                                   new String[] {
                                       "level" + direction.getSuffix(),
@@ -459,114 +1007,350 @@ public class Database {
                 return null;
 
             cursor.moveToFirst();
+            numRows = 1;
             return new Trainer.PracticeInfo(direction, cursor.getInt(0), cursor.getLong(1));
         } finally {
             cursor.close();
+            DatabaseMetrics.end("getPracticeInfo", start, numRows);
         }
     }
 
-    public boolean updatePracticeInfo(Word word, Trainer.PracticeInfo info,
-                                      int trainerVersion, boolean successful) {
-        final long now = System.currentTimeMillis() / 1000;
+    // Saves the given answers in a single transaction.  An answer is skipped
+    // if its word was last practiced (in the same direction) at or after the
+    // time of the answer, so saving the same answers twice (e.g., when the
+    // answer journal is replayed after a crash) has no effect.  The candidate
+    // pools are not touched; see updateCandidatePools().
+    public void saveAnswers(final List<Trainer.Answer> answers) {
+        long start = DatabaseMetrics.start();
+        runInTransaction(new Runnable() {
+            public void run() {
+                for (Trainer.Answer answer : answers) {
+                    SQLiteStatement update = getUpdatePracticeInfoStatement(answer.direction);
+                    update.bindLong(1, answer.level);
+                    update.bindLong(2, answer.timestamp);
+                    update.bindLong(3, answer.nextPractice);
+                    update.bindLong(4, answer.wordId);
+                    update.bindLong(5, answer.timestamp);
+                    update.execute();
+
+                    if (getNumChanges() == 1)
+                        insertPracticeLogEntry(answer.trainerVersion, answer.wordId,
+                                               answer.direction, answer.successful,
+                                               answer.timestamp);
+                }
+            }
+        });
+        DatabaseMetrics.end("saveAnswers", start, answers.size());
+    }
 
-        insertPracticeLogEntry(trainerVersion, word.getId(), info.direction, successful, now);
+    // Updates the candidate pools as if the answer had already been saved.
+    public void updateCandidatePools(Trainer.Answer answer) {
+        long start = DatabaseMetrics.start();
+        synchronized (sCandidatePools) {
+            CandidatePool[] pools = sCandidatePools.get(answer.languageId);
+            if (pools == null) {
+                // The pools will include the answer when they're loaded.
+                DatabaseMetrics.end("updateCandidatePools", start, 0);
+                return;
+            }
 
-        ContentValues values = new ContentValues();
-        values.put("level" + info.direction.getSuffix(), info.level);
-        values.put("last_practice" + info.direction.getSuffix(), now);
-        values.put("next_practice" + info.direction.getSuffix(), info.nextPractice);
+            for (Trainer.Direction d : Trainer.Direction.values()) {
+                if (d == answer.direction)
+                    pools[d.getValue()].update(answer.wordId, answer.nextPractice,
+                                               answer.timestamp);
+                else
+                    pools[d.getValue()].updateLastPractice(answer.wordId, answer.timestamp);
+            }
+            sCandidatePoolsVersion++;
+        }
+        DatabaseMetrics.end("updateCandidatePools", start, 1);
+    }
 
-        return mDb.update("words", values, "_id == ?",
-                          new String[] { word.getIdString() }) == 1;
+    private SQLiteStatement getUpdatePracticeInfoStatement(Trainer.Direction direction) {
+        return mUpdatePracticeInfoStatements[direction.getValue()];
     }
 
-    public boolean resetPracticeInfoById(long wordId) {
+    public boolean resetPracticeInfoById(final long wordId) {
+        long start = DatabaseMetrics.start();
         final long now = System.currentTimeMillis() / 1000;
+        final boolean[] updated = new boolean[1];
+
+        runInTransaction(new Runnable() {
+            public void run() {
+                insertPracticeLogEntry(Trainer.MANUAL_SCORE_RESET_VERSION, wordId,
+                                       Trainer.Direction.FROM_FOREIGN, false, now);
+                insertPracticeLogEntry(Trainer.MANUAL_SCORE_RESET_VERSION, wordId,
+                                       Trainer.Direction.TO_FOREIGN, false, now);
+
+                mResetPracticeInfoStatement.bindLong(1, now);
+                mResetPracticeInfoStatement.bindLong(2, now);
+                mResetPracticeInfoStatement.bindLong(3, wordId);
+                mResetPracticeInfoStatement.execute();
+                updated[0] = getNumChanges() == 1;
+
+                refreshCandidate(wordId);
+                if (updated[0])
+                    notifyWordChanged(wordId);
+            }
+        });
 
-        insertPracticeLogEntry(Trainer.MANUAL_SCORE_RESET_VERSION, wordId,
-                               Trainer.Direction.FROM_FOREIGN, false, now);
-        insertPracticeLogEntry(Trainer.MANUAL_SCORE_RESET_VERSION, wordId,
-                               Trainer.Direction.TO_FOREIGN, false, now);
-
-        ContentValues values = new ContentValues();
-        values.put("level_to", 0);
-        values.put("next_practice_to", now);
-        values.put("level_from", 0);
-        values.put("next_practice_from", now);
-
-        return mDb.update("words", values, "_id == ?",
-                          new String[] { Long.toString(wordId) }) == 1;
+        DatabaseMetrics.end("resetPracticeInfoById", start, updated[0] ? 1 : 0);
+        return updated[0];
     }
 
     private void insertPracticeLogEntry(int trainerVersion, long wordId,
                                         Trainer.Direction direction,
                                         boolean successful, long timestamp) {
-        ContentValues values = new ContentValues();
-        values.put("trainer", trainerVersion);
-        values.put("word_id", wordId);
-        values.put("direction", direction.getValue());
-        values.put("successful", successful);
-        values.put("timestamp", timestamp);
-
-        mDb.insert("practice_log", null, values);
+        mInsertPracticeLogStatement.bindLong(1, trainerVersion);
+        mInsertPracticeLogStatement.bindLong(2, wordId);
+        mInsertPracticeLogStatement.bindLong(3, direction.getValue());
+        mInsertPracticeLogStatement.bindLong(4, successful ? 1 : 0);
+        mInsertPracticeLogStatement.bindLong(5, timestamp);
+        mInsertPracticeLogStatement.executeInsert();
     }
 
 
-    private long getLongPreference(String name, long defValue) {
-        Cursor cursor = mDb.query("preferences",
-                                  new String[] { "value" },
-                                  "name == ?", new String[] { name },
-                                  null, null, null);
+    private void loadPreferences() {
+        Cursor cursor = mDb.query("preferences", new String[] { "name", "value" },
+                                  null, null, null, null, null);
         try {
-            if (cursor.getCount() != 1)
-                return defValue;
-
-            cursor.moveToFirst();
-            return cursor.getLong(0);
+            while (cursor.moveToNext())
+                mPreferences.put(cursor.getString(0), cursor.getLong(1));
         } finally {
             cursor.close();
         }
     }
 
-    private boolean setLongPreference(String name, long value) {
+    private long getLongPreference(String name, long defValue) {
+        Long value = mPreferences.get(name);
+        return (value != null) ? value : defValue;
+    }
+
+    // The new value is seen right away by getLongPreference(), and written
+    // to the database on the writer thread of DatabaseExecutor, so that the
+    // callers (often on the main thread) never wait for SQLite.  The writes
+    // are done in order, so the last value set is the one that's kept.
+    private void setLongPreference(final String name, final long value) {
+        mPreferences.put(name, value);
+
+        // The executor holds on to the database until the write is done.
+        DatabaseExecutor executor =
+            new DatabaseExecutor(PatoisApplication.acquireDatabase(mContext));
+        executor.write(new DatabaseExecutor.Operation<Void>() {
+            public Void run(Database db) {
+                db.writeLongPreference(name, value);
+                return null;
+            }
+        }, null);
+        executor.close();
+    }
+
+    private void writeLongPreference(String name, long value) {
         ContentValues values = new ContentValues();
+        values.put("name", name);
         values.put("value", value);
+        if (mDb.replace("preferences", null, values) == -1)
+            Log.e(TAG, "Could not save preference " + name);
+    }
 
-        if (mDb.update("preferences", values, "name == ?", new String[] { name }) == 1)
-            return true;
+    private boolean getBooleanPreference(String name, boolean defValue) {
+        return getLongPreference(name, defValue ? 1 : 0) != 0;
+    }
 
-        // This preference wasn't previously in the "preferences" table, so we
-        // insert it now.
-        values.put("name", name);
-        return mDb.insert("preferences", null, values) != -1;
+    private void setBooleanPreference(String name, boolean value) {
+        setLongPreference(name, value ? 1 : 0);
     }
 
     private static final String ACTIVE_LANGUAGE_PREF = "main.active_language";
     private static final String SORT_ORDER_PREF = "browse.sort_order";
+    private static final String METRICS_PREF = "debug.metrics";
 
     public Language getActiveLanguage() {
+        long start = DatabaseMetrics.start();
         long id = getLongPreference(ACTIVE_LANGUAGE_PREF, -1);
-        if (id == -1)
-            return null;
-
-        return getLanguage(id);
+        Language language = (id != -1) ? getLanguage(id) : null;
+        DatabaseMetrics.end("getActiveLanguage", start, language != null ? 1 : 0);
+        return language;
     }
 
     public void setActiveLanguageId(long id) {
+        long start = DatabaseMetrics.start();
         setLongPreference(ACTIVE_LANGUAGE_PREF, id);
+        DatabaseMetrics.end("setActiveLanguageId", start, 1);
     }
 
-    public static final int SORT_ORDER_BY_NAME = 0;
-    public static final int SORT_ORDER_BY_SCORE = 1;
-    public static final int SORT_ORDER_NEWEST_FIRST = 2;
-    public static final int SORT_ORDER_OLDEST_FIRST = 3;
+    public static final int SORT_ORDER_BY_NAME = BrowseQuery.SORT_ORDER_BY_NAME;
+    public static final int SORT_ORDER_BY_SCORE = BrowseQuery.SORT_ORDER_BY_SCORE;
+    public static final int SORT_ORDER_NEWEST_FIRST = BrowseQuery.SORT_ORDER_NEWEST_FIRST;
+    public static final int SORT_ORDER_OLDEST_FIRST = BrowseQuery.SORT_ORDER_OLDEST_FIRST;
 
     public int getSortOrder() {
-        return (int) getLongPreference(SORT_ORDER_PREF, 0);
+        long start = DatabaseMetrics.start();
+        int order = (int) getLongPreference(SORT_ORDER_PREF, 0);
+        DatabaseMetrics.end("getSortOrder", start, 1);
+        return order;
     }
 
     public void setSortOrder(int order) {
+        long start = DatabaseMetrics.start();
         setLongPreference(SORT_ORDER_PREF, order);
+        DatabaseMetrics.end("setSortOrder", start, 1);
+    }
+
+    // Whether DatabaseMetrics records the calls.  The setting is kept in
+    // the database, and applied whenever the database is opened.
+    public boolean getMetricsEnabled() {
+        return getBooleanPreference(METRICS_PREF, false);
+    }
+
+    public void setMetricsEnabled(boolean enabled) {
+        setBooleanPreference(METRICS_PREF, enabled);
+        DatabaseMetrics.setEnabled(enabled);
+    }
+
+
+    public Importer beginImport() {
+        return new Importer();
+    }
+
+    // Adds languages, words and translations in bulk, e.g., when importing
+    // them from a CSV file.  Everything is added in a single transaction,
+    // using precompiled statements, and existing languages and words are
+    // looked up in in-memory maps instead of querying the database for each
+    // of them.  Call setSuccessful() once all the data was added, and
+    // finish() in any case; otherwise, nothing is saved.
+    public class Importer {
+        private SQLiteStatement mInsertLanguage;
+        private SQLiteStatement mInsertWord;
+        private SQLiteStatement mInsertTranslation;
+
+        // Maps language codes to language IDs.
+        private HashMap<String, Long> mLanguageIds;
+        // Maps language IDs to the (name -> ID) maps of the words in that
+        // language.  Each of them is only loaded when first needed.
+        private HashMap<Long, HashMap<String, Long>> mWordIds;
+
+        private long mNow;
+        private long mNextPractice;
+
+        private Importer() {
+            mDb.beginTransaction();
+
+            mInsertLanguage = mDb.compileStatement(
+                    "INSERT INTO languages (code, name) VALUES (?, ?)");
+            mInsertWord = mDb.compileStatement(
+                    "INSERT INTO words (" +
+                    "    name, language_id, timestamp, " +
+                    "    level_from, next_practice_from, level_to, next_practice_to" +
+                    ") VALUES (?, ?, ?, 0, ?, 0, ?)");
+            mInsertTranslation = mDb.compileStatement(
+                    "INSERT OR IGNORE INTO translations (word_id1, word_id2) VALUES (?, ?)");
+
+            mLanguageIds = new HashMap<String, Long>();
+            Cursor cursor = mDb.query("languages", new String[] { "_id", "code" },
+                                      null, null, null, null, null);
+            try {
+                while (cursor.moveToNext())
+                    mLanguageIds.put(cursor.getString(1), cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+            mWordIds = new HashMap<Long, HashMap<String, Long>>();
+
+            mNow = System.currentTimeMillis() / 1000;
+            mNextPractice = PracticeSchedule.scheduleNextPractice(mNow, 0);
+        }
+
+        // Returns the ID of the language with the given code, adding it if
+        // it's not already in the database.
+        public long addLanguage(String code, String name) {
+            Long id = mLanguageIds.get(code);
+            if (id != null)
+                return id;
+
+            mInsertLanguage.bindString(1, code);
+            mInsertLanguage.bindString(2, name);
+            id = mInsertLanguage.executeInsert();
+            mLanguageIds.put(code, id);
+
+            return id;
+        }
+
+        // Returns the ID of the language with the given code, or -1 if
+        // there's no such language.
+        public long getLanguageId(String code) {
+            Long id = mLanguageIds.get(code);
+            return (id != null) ? id : -1;
+        }
+
+        // Returns the ID of the word, adding it if it's not already in the
+        // database.
+        public long addWord(long languageId, String name) {
+            HashMap<String, Long> wordIds = getWordIds(languageId);
+            Long id = wordIds.get(name);
+            if (id != null)
+                return id;
+
+            mInsertWord.bindString(1, name);
+            mInsertWord.bindLong(2, languageId);
+            mInsertWord.bindLong(3, mNow);
+            mInsertWord.bindLong(4, mNextPractice);
+            mInsertWord.bindLong(5, mNextPractice);
+            id = mInsertWord.executeInsert();
+            wordIds.put(name, id);
+
+            return id;
+        }
+
+        // Records the two words as translations of each other.  Existing
+        // translations are left alone.
+        public void addTranslation(long wordId1, long wordId2) {
+            if (wordId1 == wordId2)
+                return;
+
+            mInsertTranslation.bindLong(1, wordId1);
+            mInsertTranslation.bindLong(2, wordId2);
+            mInsertTranslation.execute();
+
+            mInsertTranslation.bindLong(1, wordId2);
+            mInsertTranslation.bindLong(2, wordId1);
+            mInsertTranslation.execute();
+        }
+
+        public void setSuccessful() {
+            mDb.setTransactionSuccessful();
+        }
+
+        public void finish() {
+            mInsertLanguage.close();
+            mInsertWord.close();
+            mInsertTranslation.close();
+            mDb.endTransaction();
+
+            mLanguagesCache.clear();
+            invalidateCaches();
+        }
+
+        private HashMap<String, Long> getWordIds(long languageId) {
+            HashMap<String, Long> wordIds = mWordIds.get(languageId);
+            if (wordIds != null)
+                return wordIds;
+
+            wordIds = new HashMap<String, Long>();
+            Cursor cursor = mDb.query("words", new String[] { "_id", "name" },
+                                      "language_id == ?",
+                                      new String[] { Long.toString(languageId) },
+                                      null, null, null);
+            try {
+                while (cursor.moveToNext())
+                    wordIds.put(cursor.getString(1), cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+            mWordIds.put(languageId, wordIds);
+
+            return wordIds;
+        }
     }
 
 
@@ -579,29 +1363,136 @@ public class Database {
     }
 
 
-    public static class Lock {
-        private SQLiteDatabase mDb;
+    // Removes the write-ahead log of the database.  This must be called
+    // after the database file was replaced (e.g., when restoring a backup),
+    // since the log belongs to the old file.
+    public static void deleteWriteAheadLog(File databaseFile) {
+        new File(databaseFile.getPath() + "-wal").delete();
+        new File(databaseFile.getPath() + "-shm").delete();
+    }
+
+    // Writes a consistent copy of the database to snapshotFile, while the
+    // app keeps using the database.
+    //
+    // The copy is done by attaching snapshotFile and copying the schema and
+    // the rows from inside a single read transaction.  With write-ahead
+    // logging, this doesn't block the writers.  (On Android 4.1 and later,
+    // SQLiteDatabase turns every BEGIN into BEGIN EXCLUSIVE, which does block
+    // them, so snapshotFile should be on fast internal storage to keep the
+    // transaction short.)  Unlike a copy of the database file, the snapshot
+    // is a single self-contained file, with no write-ahead log.
+    public static void writeSnapshot(File databaseFile, File snapshotFile) {
+        snapshotFile.delete();
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null,
+                                                        SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.execSQL("ATTACH DATABASE ? AS snapshot", new Object[] { snapshotFile.getPath() });
+
+            boolean committed = false;
+            db.execSQL("BEGIN DEFERRED TRANSACTION;");
+            try {
+                copyDatabase(db, "main", "snapshot");
+                db.execSQL("COMMIT TRANSACTION;");
+                committed = true;
+            } finally {
+                if (!committed)
+                    db.execSQL("ROLLBACK TRANSACTION;");
+            }
 
-        public Lock(Context context) {
-            mDb = SQLiteDatabase.openDatabase(getDatabaseFile(context).getPath(), null,
-                                              SQLiteDatabase.OPEN_READWRITE);
+            db.execSQL("DETACH DATABASE snapshot");
+        } finally {
+            db.close();
         }
+    }
 
-        public void acquire() {
-            // As per http://www.sqlite.org/backup.html, in order to back up an
-            // SQLite database, one has to:
-            //   1. Establish a shared lock on the database file.
-            //   2. Copy the database file using an external tool.
-            //   3. Relinquish the shared lock on the database file.
-            //
-            // This is step 1. from above: obtain a RESERVED lock, which is
-            // stronger than SHARED.
-            mDb.execSQL("BEGIN IMMEDIATE TRANSACTION;");
+    // Copies the schema and the contents of the from database into the
+    // (empty) to database.  Both must be attached to db.
+    private static void copyDatabase(SQLiteDatabase db, String from, String to) {
+        ArrayList<String[]> tables = new ArrayList<String[]>();
+        ArrayList<String> others = new ArrayList<String>();
+
+        Cursor cursor = db.rawQuery("SELECT type, name, sql FROM " + from + ".sqlite_master " +
+                                    "  WHERE sql IS NOT NULL ORDER BY rowid", null);
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getString(0).equals("table"))
+                    tables.add(new String[] { cursor.getString(1), cursor.getString(2) });
+                else
+                    others.add(cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
         }
 
-        public void release() {
-            mDb.execSQL("END TRANSACTION;");
-            mDb.close();
+        // Copy the tables first, and only add the indexes and triggers at the
+        // end: the indexes are faster to build in one go, and the triggers
+        // must not run for the copied rows.
+        SQLiteStatement tableExists = db.compileStatement(
+                "SELECT count(*) FROM " + to + ".sqlite_master WHERE type = 'table' AND name = ?");
+        try {
+            for (String[] table : tables) {
+                String name = table[0];
+                String sql = table[1];
+
+                // sqlite_sequence is created by SQLite along with the first
+                // AUTOINCREMENT table, and is copied below.
+                if (name.startsWith("sqlite_"))
+                    continue;
+
+                // The shadow tables of virtual tables (e.g., words_fts_content)
+                // are created along with the virtual table, but we still copy
+                // their contents, since the virtual tables themselves hold no
+                // rows.
+                tableExists.bindString(1, name);
+                if (tableExists.simpleQueryForLong() == 0)
+                    db.execSQL(qualifyCreateStatement(sql, to));
+
+                if (!sql.startsWith("CREATE VIRTUAL TABLE "))
+                    db.execSQL("INSERT INTO " + to + ".\"" + name + "\" " +
+                               "SELECT * FROM " + from + ".\"" + name + "\"");
+            }
+
+            // Preserve the AUTOINCREMENT counters, so that the IDs of deleted
+            // rows are not reused.
+            tableExists.bindString(1, "sqlite_sequence");
+            if (tableExists.simpleQueryForLong() != 0) {
+                db.execSQL("DELETE FROM " + to + ".sqlite_sequence");
+                db.execSQL("INSERT INTO " + to + ".sqlite_sequence " +
+                           "SELECT * FROM " + from + ".sqlite_sequence");
+            }
+        } finally {
+            tableExists.close();
+        }
+
+        for (String sql : others)
+            db.execSQL(qualifyCreateStatement(sql, to));
+
+        SQLiteStatement getVersion = db.compileStatement("PRAGMA " + from + ".user_version");
+        try {
+            db.execSQL("PRAGMA " + to + ".user_version = " + getVersion.simpleQueryForLong());
+        } finally {
+            getVersion.close();
+        }
+    }
+
+    // SQLite stores the CREATE statements in sqlite_master with their leading
+    // keywords normalized, so we can insert the database name right after
+    // them.
+    private static final String[] CREATE_PREFIXES = {
+        "CREATE TABLE ",
+        "CREATE VIRTUAL TABLE ",
+        "CREATE INDEX ",
+        "CREATE UNIQUE INDEX ",
+        "CREATE TRIGGER ",
+        "CREATE VIEW ",
+    };
+
+    private static String qualifyCreateStatement(String sql, String database) {
+        for (String prefix : CREATE_PREFIXES) {
+            if (sql.startsWith(prefix))
+                return prefix + database + "." + sql.substring(prefix.length());
         }
+        throw new IllegalArgumentException("Unknown CREATE statement: " + sql);
     }
 }
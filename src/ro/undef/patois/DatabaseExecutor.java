@@ -0,0 +1,283 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Runs Database operations in the background, and delivers their results on
+// the main thread, so that the activities never wait for SQLite.
+//
+// The writes of all the activities run one at a time, on a single writer
+// thread: SQLite only allows one writer at a time anyway, and this way they
+// never have to wait for each other's locks.  The reads run on a small pool of
+// threads, but each read only starts after all the writes submitted before it
+// have finished, so an activity always sees its own changes (and those of the
+// activity that started it).
+//
+// Each activity wraps its Database in a DatabaseExecutor.  After close(), no
+// more results are delivered, and the Database is closed as soon as all the
+// pending operations have finished, so the writes submitted right before
+// finish() are not lost.
+//
+// While the database file is being replaced (see
+// PatoisApplication.suspendDatabase()), the executors are suspended: the
+// operations which already started are waited for, and the others wait on
+// their threads until resume().
+public class DatabaseExecutor {
+    private final static String TAG = "DatabaseExecutor";
+
+    private static final int NUM_READER_THREADS = 2;
+
+    public interface Operation<T> {
+        // Called on a background thread.
+        public T run(Database db);
+    }
+
+    public interface Callback<T> {
+        // Called on the main thread.
+        public void onResult(T result);
+    }
+
+    // The threads are shared by all the executors.
+    private static ExecutorService sWriter;
+    private static ExecutorService sReaders;
+
+    private static final Object sWritesLock = new Object();
+    private static long sNumWritesSubmitted = 0;
+    private static long sNumWritesFinished = 0;
+
+    private static final Object sSuspendLock = new Object();
+    private static boolean sSuspended = false;
+    // The number of operations (and prefetches) running right now.
+    private static int sNumRunning = 0;
+
+    private final Database mDb;
+    private final Handler mHandler;
+    private int mNumPending;
+    private boolean mClosed;
+
+    public DatabaseExecutor(Database db) {
+        mDb = db;
+        mHandler = new Handler(Looper.getMainLooper());
+        mNumPending = 0;
+        mClosed = false;
+    }
+
+    public Database getDatabase() {
+        return mDb;
+    }
+
+    // Runs operation on one of the reader threads, once all the previously
+    // submitted writes have finished.
+    public <T> void read(final Operation<T> operation, final Callback<T> callback) {
+        final long numWrites;
+        synchronized (sWritesLock) {
+            numWrites = sNumWritesSubmitted;
+        }
+
+        startOperation();
+        getReaders().execute(new Runnable() {
+            public void run() {
+                try {
+                    // The writes are waited for first, since they might be
+                    // held back by suspend().
+                    waitForWrites(numWrites);
+                    deliver(callback, runOperation(operation));
+                } finally {
+                    finishOperation();
+                }
+            }
+        });
+    }
+
+    // Runs operation on the writer thread.  callback may be null.
+    public <T> void write(final Operation<T> operation, final Callback<T> callback) {
+        synchronized (sWritesLock) {
+            sNumWritesSubmitted++;
+        }
+
+        startOperation();
+        getWriter().execute(new Runnable() {
+            public void run() {
+                try {
+                    deliver(callback, runOperation(operation));
+                } finally {
+                    synchronized (sWritesLock) {
+                        sNumWritesFinished++;
+                        sWritesLock.notifyAll();
+                    }
+                    finishOperation();
+                }
+            }
+        });
+    }
+
+    // Runs runnable on one of the reader threads, without waiting for the
+    // pending writes and without a callback.  Meant for prefetching data
+    // which isn't tied to a particular activity (see PagedCursor).
+    public static void prefetch(final Runnable runnable) {
+        getReaders().execute(new Runnable() {
+            public void run() {
+                startRunning();
+                try {
+                    runnable.run();
+                } finally {
+                    stopRunning();
+                }
+            }
+        });
+    }
+
+    // Waits for the running operations to finish, and holds back the
+    // others until resume().  Must not be called from one of the
+    // operations.
+    public static void suspend() {
+        synchronized (sSuspendLock) {
+            sSuspended = true;
+            boolean interrupted = false;
+            while (sNumRunning > 0) {
+                try {
+                    sSuspendLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void resume() {
+        synchronized (sSuspendLock) {
+            sSuspended = false;
+            sSuspendLock.notifyAll();
+        }
+    }
+
+    private <T> T runOperation(Operation<T> operation) {
+        startRunning();
+        try {
+            return operation.run(mDb);
+        } finally {
+            stopRunning();
+        }
+    }
+
+    private static void startRunning() {
+        synchronized (sSuspendLock) {
+            boolean interrupted = false;
+            while (sSuspended) {
+                try {
+                    sSuspendLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            sNumRunning++;
+        }
+    }
+
+    private static void stopRunning() {
+        synchronized (sSuspendLock) {
+            sNumRunning--;
+            sSuspendLock.notifyAll();
+        }
+    }
+
+    public synchronized void close() {
+        mClosed = true;
+        if (mNumPending == 0)
+            mDb.release();
+    }
+
+    private synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    private synchronized void startOperation() {
+        if (mClosed)
+            throw new IllegalStateException("DatabaseExecutor already closed");
+        mNumPending++;
+    }
+
+    private synchronized void finishOperation() {
+        mNumPending--;
+        if (mNumPending == 0 && mClosed)
+            mDb.release();
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        if (callback == null)
+            return;
+
+        mHandler.post(new Runnable() {
+            public void run() {
+                // The activity might have been destroyed in the meantime.
+                if (!isClosed())
+                    callback.onResult(result);
+            }
+        });
+    }
+
+    private static void waitForWrites(long numWrites) {
+        synchronized (sWritesLock) {
+            while (sNumWritesFinished < numWrites) {
+                try {
+                    sWritesLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getWriter() {
+        if (sWriter == null)
+            sWriter = Executors.newSingleThreadExecutor(new NamedThreadFactory("writer"));
+        return sWriter;
+    }
+
+    private static synchronized ExecutorService getReaders() {
+        if (sReaders == null)
+            sReaders = Executors.newFixedThreadPool(NUM_READER_THREADS,
+                                                    new NamedThreadFactory("reader"));
+        return sReaders;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private int mNumThreads;
+
+        public NamedThreadFactory(String name) {
+            mName = name;
+            mNumThreads = 0;
+        }
+
+        public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Database " + mName + " " + ++mNumThreads);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The number of calls, the number of rows returned and the latency of each
+// public Database method, for finding out which of them are slow on a
+// given phone (see MetricsActivity).  The methods do:
+//
+//     long start = DatabaseMetrics.start();
+//     ...
+//     DatabaseMetrics.end("methodName", start, numRows);
+//
+// Recording is off by default.  While it's off, start() only reads a
+// volatile flag and end() returns right away, so the calls cost next to
+// nothing.
+//
+// The number of rows is what the method returns (or changes), or -1 if it
+// isn't known without extra work, e.g., for the cursors which are only
+// filled when they're first read.  The latency of those only covers
+// preparing the query.
+
+public class DatabaseMetrics {
+    private static volatile boolean sEnabled = false;
+
+    private static final ConcurrentHashMap<String, Method> sMethods =
+        new ConcurrentHashMap<String, Method>();
+
+    // The metrics of a single method.
+    public static class Method {
+        public final String name;
+        public final AtomicLong numRows;
+        public final LatencyHistogram latency;
+
+        public Method(String name) {
+            this.name = name;
+            this.numRows = new AtomicLong();
+            this.latency = new LatencyHistogram();
+        }
+
+        public long getNumCalls() {
+            return latency.getCount();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    // Returns the start time of a call, or 0 if recording is off.
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    // Records a call which started at start (as returned by start()).  The
+    // calls which started while recording was off are ignored.
+    public static void end(String methodName, long start, long numRows) {
+        if (start == 0)
+            return;
+
+        long micros = (System.nanoTime() - start) / 1000;
+
+        Method method = sMethods.get(methodName);
+        if (method == null) {
+            sMethods.putIfAbsent(methodName, new Method(methodName));
+            method = sMethods.get(methodName);
+        }
+
+        if (numRows > 0)
+            method.numRows.addAndGet(numRows);
+        method.latency.record(micros);
+    }
+
+    // Returns the methods called so far, sorted by name.
+    public static ArrayList<Method> getMethods() {
+        ArrayList<Method> methods = new ArrayList<Method>(sMethods.values());
+        Collections.sort(methods, new Comparator<Method>() {
+            public int compare(Method method1, Method method2) {
+                return method1.name.compareTo(method2.name);
+            }
+        });
+        return methods;
+    }
+
+    public static void reset() {
+        sMethods.clear();
+    }
+
+    // Writes the metrics as a JSON object, with the latencies in
+    // microseconds.  The histograms are written as [max, count] pairs, one
+    // for each non-empty bucket, where max is the largest value which goes
+    // into the bucket.  The PracticeTrace sessions are written along with
+    // them, as "practice_sessions".
+    public static void writeJson(Writer out, long timestamp) throws IOException {
+        out.write("{\n");
+        out.write("  \"timestamp\": " + timestamp + ",\n");
+        out.write("  \"enabled\": " + isEnabled() + ",\n");
+        out.write("  \"methods\": {");
+
+        boolean first = true;
+        for (Method method : getMethods()) {
+            LatencyHistogram latency = method.latency;
+
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write("    " + quote(method.name) + ": {\n");
+            out.write("      \"calls\": " + method.getNumCalls() + ",\n");
+            out.write("      \"rows\": " + method.numRows.get() + ",\n");
+            out.write("      \"total_us\": " + latency.getTotal() + ",\n");
+            out.write("      \"p50_us\": " + latency.getPercentile(50) + ",\n");
+            out.write("      \"p90_us\": " + latency.getPercentile(90) + ",\n");
+            out.write("      \"p99_us\": " + latency.getPercentile(99) + ",\n");
+            out.write("      \"max_us\": " + latency.getMax() + ",\n");
+            out.write("      \"histogram\": [");
+
+            boolean firstBucket = true;
+            for (int bucket = 0; bucket < latency.getNumBuckets(); bucket++) {
+                long count = latency.getBucketCount(bucket);
+                if (count == 0)
+                    continue;
+
+                out.write(firstBucket ? "" : ", ");
+                firstBucket = false;
+                out.write("[" + LatencyHistogram.getBucketMax(bucket) + ", " + count + "]");
+            }
+            out.write("]\n");
+            out.write("    }");
+        }
+
+        out.write(first ? "},\n" : "\n  },\n");
+        out.write("  \"practice_sessions\": ");
+        PracticeTrace.writeJson(out, "  ");
+        out.write("\n}\n");
+    }
+
+    private static String quote(String str) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\');
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+}
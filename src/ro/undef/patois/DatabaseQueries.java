@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+// The SQL of the most expensive reads done by Database, and the parser of
+// the SQL scripts in assets/sql.  This is plain Java, so the very same
+// statements can be run against the SQLite of the host machine, by the
+// database benchmarks in bench/src (see core.xml).  Database only binds the
+// arguments and reads the results.
+//
+// Like with SQLiteDatabase.rawQuery(), all the arguments of these queries
+// are bound as text.
+//
+// The queries of the browse list are built by BrowseQuery.
+
+public class DatabaseQueries {
+    // Returns the ID and weight of the words of a language which are due for
+    // practice in the direction with the given suffix (see
+    // Trainer.Direction.getSuffix()).  The only argument is the language ID.
+    //
+    // The samplers used to run this for every pick.  CandidatePool now keeps
+    // the same weights in memory, so this is only run by the benchmarks, as
+    // the baseline for loading the pools.
+    public static String getWordWeightsQuery(String directionSuffix) {
+        return "SELECT " +
+               "    _id, " +
+               "    strftime('%s', 'now') - next_practice" + directionSuffix +
+               "        AS weight " +
+               "  FROM " +
+               "    words " +
+               "  WHERE " +
+               "    language_id == ? AND " +
+               // Equivalent to "weight > 0", but can use the practice indexes.
+               "    next_practice" + directionSuffix + " < strftime('%s', 'now') AND " +
+               "    num_translations > 0 AND " +
+               "    last_practice_from < strftime('%s', 'now') - 3600 AND " +
+               "    last_practice_to < strftime('%s', 'now') - 3600 ";
+    }
+
+    // Returns the ID and name of the words of a language, which make up its
+    // WordIndex.  The only argument is the language ID.
+    public static final String WORD_INDEX_QUERY =
+        "SELECT _id, name FROM words WHERE language_id == ?";
+
+    // Returns the ID, code and name of all the languages (see
+    // Database.LANGUAGES_*_COLUMN).
+    public static final String LANGUAGES_QUERY =
+        "SELECT _id, code, name FROM languages";
+
+    // Returns all the words together with their translations, one row per
+    // (word, translation) pair (see Database.EXPORT_WORDS_*_COLUMN).  Words
+    // without translations get a single row, with NULL translation columns.
+    // The rows of each word are consecutive.
+    public static final String EXPORT_WORDS_QUERY =
+        "SELECT " +
+        "    w._id, " +
+        "    lw.code, " +
+        "    w.name, " +
+        "    lt.code, " +
+        "    t.name " +
+        "  FROM " +
+        "    words AS w " +
+        "    JOIN languages AS lw ON lw._id == w.language_id " +
+        "    LEFT JOIN translations AS tr ON tr.word_id1 == w._id " +
+        "    LEFT JOIN words AS t ON t._id == tr.word_id2 " +
+        "    LEFT JOIN languages AS lt ON lt._id == t.language_id " +
+        "  ORDER BY " +
+        "    w.language_id, w._id";
+
+    // Splits an SQL script into statements, following the conventions
+    // described at the top of assets/sql/patois.sql: lines starting with
+    // "--" are comments, and the statements are separated by empty lines.
+    public static ArrayList<String> readStatements(BufferedReader in) throws IOException {
+        String eol = System.getProperty("line.separator");
+        ArrayList<String> statements = new ArrayList<String>();
+        StringBuilder statement = new StringBuilder("");
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            String trimmed = line.trim();
+
+            // Ignore comments.
+            if (trimmed.startsWith("--"))
+                continue;
+
+            // Empty lines terminate statements.
+            if (trimmed.length() == 0) {
+                if (statement.length() != 0)
+                    statements.add(statement.toString());
+                statement.setLength(0);
+                continue;
+            }
+
+            statement.append(line);
+            statement.append(eol);  // readLine() strips the EOL characters.
+        }
+        if (statement.length() != 0)
+            statements.add(statement.toString());
+
+        return statements;
+    }
+}
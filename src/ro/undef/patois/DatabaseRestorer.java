@@ -16,6 +16,7 @@
 
 package ro.undef.patois;
 
+import android.content.Context;
 import android.widget.Toast;
 import java.io.File;
 
@@ -65,6 +66,32 @@ public class DatabaseRestorer extends FilePicker {
     @Override
     protected PersistentTask getTask() {
         return new CopyFileTask(getActivity(), mInputFile, mOutputFile) {
+            // The activity might be gone by the time the task finishes.
+            private Context mContext;
+
+            protected void onStart() {
+                mContext = getActivity().getApplicationContext();
+            }
+
+            // The shared database stays open while other activities use it,
+            // so it's closed while its file is replaced.  Suspending it
+            // waits for the database operations in flight, so it's done in
+            // the background.
+            @Override
+            protected Boolean doInBackground(Void... unused) {
+                PatoisApplication.suspendDatabase(mContext);
+                Boolean successful = super.doInBackground(unused);
+                if (successful)
+                    Database.deleteWriteAheadLog(mOutputFile);
+                return successful;
+            }
+
+            protected void onFinishImmediate(boolean successful) {
+                if (successful)
+                    Database.invalidateCaches();
+                PatoisApplication.reopenDatabase(mContext);
+            }
+
             protected void onFinish(boolean successful) {
                 finishTask(successful);
             }
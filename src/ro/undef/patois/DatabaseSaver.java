@@ -16,13 +16,17 @@
 
 package ro.undef.patois;
 
+import android.database.SQLException;
 import java.io.File;
 
 
 public class DatabaseSaver extends FilePicker {
     private final static String TAG = "DatabaseSaver";
 
+    private static final String SNAPSHOT_FILE_NAME = "snapshot.db";
+
     private File mInputFile;
+    private File mSnapshotFile;
     private File mOutputFile;
 
     public DatabaseSaver(int dialogIdBase) {
@@ -37,6 +41,7 @@ public class DatabaseSaver extends FilePicker {
               R.string.save_failed);
 
         mInputFile = null;
+        mSnapshotFile = null;
         mOutputFile = null;
     }
 
@@ -45,6 +50,7 @@ public class DatabaseSaver extends FilePicker {
         mInputFile = Database.getDatabaseFile(getActivity());
         if (!mInputFile.exists())
             throw new RuntimeException("Cannot save database backup: missing database file.");
+        mSnapshotFile = new File(getActivity().getCacheDir(), SNAPSHOT_FILE_NAME);
 
         mOutputFile = new File(getFileName());
         if (mOutputFile.exists()) {
@@ -57,16 +63,22 @@ public class DatabaseSaver extends FilePicker {
 
     @Override
     protected PersistentTask getTask() {
-        return new CopyFileTask(getActivity(), mInputFile, mOutputFile) {
-            private Database.Lock mLock;
-
-            protected void onStart() {
-                mLock = new Database.Lock(getActivity());
-                mLock.acquire();
-            }
-
-            protected void onFinishImmediate(boolean successful) {
-                mLock.release();
+        // We first take a snapshot of the database on internal storage, which
+        // is fast, and then copy it to the (possibly slow) external storage,
+        // while the app can keep using the database.
+        return new CopyFileTask(getActivity(), mSnapshotFile, mOutputFile) {
+            @Override
+            protected Boolean doInBackground(Void... unused) {
+                try {
+                    Database.writeSnapshot(mInputFile, mSnapshotFile);
+                    return super.doInBackground(unused);
+                } catch (SQLException e) {
+                    return false;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                } finally {
+                    mSnapshotFile.delete();
+                }
             }
 
             protected void onFinish(boolean successful) {
@@ -56,7 +56,7 @@ public class EditLanguagesActivity extends Activity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mDb = new Database(this);
+        mDb = PatoisApplication.acquireDatabase(this);
 
         if (savedInstanceState != null) {
             loadStateFromBundle(savedInstanceState);
@@ -70,7 +70,7 @@ public class EditLanguagesActivity extends Activity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDb.close();
+        mDb.release();
     }
 
     private void loadStateFromDatabase() {
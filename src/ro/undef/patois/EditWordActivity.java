@@ -64,6 +64,7 @@ public class EditWordActivity extends Activity {
     private final static int SELECT_LANGUAGE_DIALOG = 1;
 
     private Database mDb;
+    private DatabaseExecutor mExecutor;
 
     private LinearLayout mTranslationsLayout;
     private LayoutInflater mInflater;
@@ -73,7 +74,9 @@ public class EditWordActivity extends Activity {
     private View mCancelButton;
     private WordEntry mLanguageListener;
 
-    // These fields are saved across restarts.
+    // These fields are saved across restarts.  They are all null while the
+    // initial state is being loaded.
+    private ArrayList<Language> mLanguages;
     private WordEntry mMainWordEntry;
     private ArrayList<TranslationEntry> mTranslationEntries;
     private boolean mAddButtonHasFocus;
@@ -85,26 +88,21 @@ public class EditWordActivity extends Activity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mDb = new Database(this);
+        mDb = PatoisApplication.acquireDatabase(this);
+        mExecutor = new DatabaseExecutor(mDb);
 
-        if (savedInstanceState != null) {
+        if (savedInstanceState != null && savedInstanceState.containsKey("main_word")) {
             loadStateFromBundle(savedInstanceState);
+            setupViews();
         } else {
-            long wordId = getIntent().getLongExtra(EXTRA_WORD_ID, -1);
-
-            if (wordId != -1)
-                loadStateFromDatabase(wordId);
-            else
-                resetState();
+            loadStateFromDatabase(getIntent().getLongExtra(EXTRA_WORD_ID, -1));
         }
-
-        setupViews();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDb.close();
+        mExecutor.close();
     }
 
     @Override
@@ -120,7 +118,7 @@ public class EditWordActivity extends Activity {
 
         // We only show the menu if the word is in the database, because
         // neither "reset score" nor "delete word" make sense otherwise.
-        return mMainWordEntry.getWord().isInDatabase();
+        return mMainWordEntry != null && mMainWordEntry.getWord().isInDatabase();
     }
 
     @Override
@@ -131,8 +129,14 @@ public class EditWordActivity extends Activity {
                 return true;
             }
             case R.id.delete_word: {
-                if (mMainWordEntry.getWord().isInDatabase())
-                    mDb.deleteWord(mMainWordEntry.getWord());
+                final Word word = mMainWordEntry.getWord();
+                if (word.isInDatabase()) {
+                    mExecutor.write(new DatabaseExecutor.Operation<Boolean>() {
+                        public Boolean run(Database db) {
+                            return db.deleteWord(word);
+                        }
+                    }, null);
+                }
                 finish();
                 return true;
             }
@@ -140,8 +144,48 @@ public class EditWordActivity extends Activity {
         return false;
     }
 
-    private void resetState() {
-        mMainWordEntry = new WordEntry(mDb.getActiveLanguage());
+    // The initial state of the activity, loaded in the background.
+    private static class InitialState {
+        public ArrayList<Language> languages;
+        public Language activeLanguage;
+        public Word mainWord;
+        public ArrayList<Word> translations;
+    }
+
+    // Loads the word with the given ID for editing, or prepares for adding
+    // a new word if wordId is -1, and then sets up the views.
+    private void loadStateFromDatabase(final long wordId) {
+        mExecutor.read(new DatabaseExecutor.Operation<InitialState>() {
+            public InitialState run(Database db) {
+                InitialState state = new InitialState();
+                state.languages = db.getLanguages();
+                state.activeLanguage = db.getActiveLanguage();
+                if (wordId != -1) {
+                    state.mainWord = db.getWord(wordId);
+                    if (state.mainWord != null)
+                        state.translations = db.getTranslations(state.mainWord);
+                }
+                return state;
+            }
+        }, new DatabaseExecutor.Callback<InitialState>() {
+            public void onResult(InitialState state) {
+                mLanguages = state.languages;
+                if (wordId == -1) {
+                    resetState(state.activeLanguage);
+                } else if (state.mainWord != null) {
+                    loadState(state.mainWord, state.translations);
+                } else {
+                    // The word was deleted in the meantime.
+                    finish();
+                    return;
+                }
+                setupViews();
+            }
+        });
+    }
+
+    private void resetState(Language activeLanguage) {
+        mMainWordEntry = new WordEntry(activeLanguage);
 
         mTranslationEntries = new ArrayList<TranslationEntry>();
         mTranslationEntries.add(new TranslationEntry(pickTranslationLanguage()));
@@ -154,12 +198,11 @@ public class EditWordActivity extends Activity {
         mCancelButtonHasFocus = false;
     }
 
-    private void loadStateFromDatabase(long wordId) {
-        Word mainWord = mDb.getWord(wordId);
+    private void loadState(Word mainWord, ArrayList<Word> translations) {
         mMainWordEntry = new WordEntry(mainWord);
 
         ArrayList<TranslationEntry> entries = new ArrayList<TranslationEntry>();
-        for (Word word : mDb.getTranslations(mainWord))
+        for (Word word : translations)
             entries.add(new TranslationEntry(word, true));
         mTranslationEntries = entries;
 
@@ -172,11 +215,32 @@ public class EditWordActivity extends Activity {
     }
 
     private void saveStateToDatabase() {
-        mMainWordEntry.saveToDatabase(mDb);
+        if (mMainWordEntry == null)
+            return;
 
-        for (TranslationEntry entry : mTranslationEntries) {
-            entry.saveToDatabase(mDb, mMainWordEntry.getWord());
-        }
+        // The views can only be read from the main thread.
+        mMainWordEntry.syncFromView();
+        for (TranslationEntry entry : mTranslationEntries)
+            entry.syncFromView();
+
+        final WordEntry mainWordEntry = mMainWordEntry;
+        final ArrayList<TranslationEntry> translationEntries = mTranslationEntries;
+        mExecutor.write(new DatabaseExecutor.Operation<Void>() {
+            public Void run(final Database db) {
+                // Save the main word and all its translations with a single
+                // commit.
+                db.runInTransaction(new Runnable() {
+                    public void run() {
+                        mainWordEntry.saveToDatabase(db);
+
+                        for (TranslationEntry entry : translationEntries) {
+                            entry.saveToDatabase(db, mainWordEntry.getWord());
+                        }
+                    }
+                });
+                return null;
+            }
+        }, null);
     }
 
     @SuppressWarnings("unchecked")
@@ -186,6 +250,8 @@ public class EditWordActivity extends Activity {
         mTranslationEntries = (ArrayList<TranslationEntry>)
             savedInstanceState.getSerializable("translations");
 
+        mLanguages = (ArrayList<Language>) savedInstanceState.getSerializable("languages");
+
         mLanguageListener = null;
 
         mAddButtonHasFocus = savedInstanceState.getBoolean("add_translation");
@@ -196,6 +262,12 @@ public class EditWordActivity extends Activity {
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
+        // If we're still loading, we'll just start over.
+        if (mMainWordEntry == null)
+            return;
+
+        outState.putSerializable("languages", mLanguages);
+
         mMainWordEntry.syncFromView();
         outState.putSerializable("main_word", mMainWordEntry);
 
@@ -279,7 +351,7 @@ public class EditWordActivity extends Activity {
         entry.requestFocus();
     }
 
-    private void reloadTranslations(Word mainWord) {
+    private void reloadTranslations(final Word mainWord) {
         // First, clear all entries that don't contain any user-entered
         // information.
         for (TranslationEntry entry : mTranslationEntries)
@@ -287,7 +359,19 @@ public class EditWordActivity extends Activity {
                 entry.markAsDeleted();
 
         // Then, add all the translations of new mainWord.
-        for (Word word : mDb.getTranslations(mainWord)) {
+        mExecutor.read(new DatabaseExecutor.Operation<ArrayList<Word>>() {
+            public ArrayList<Word> run(Database db) {
+                return db.getTranslations(mainWord);
+            }
+        }, new DatabaseExecutor.Callback<ArrayList<Word>>() {
+            public void onResult(ArrayList<Word> translations) {
+                addTranslations(translations);
+            }
+        });
+    }
+
+    private void addTranslations(ArrayList<Word> translations) {
+        for (Word word : translations) {
             boolean duplicate = false;
             for (TranslationEntry entry : mTranslationEntries)
                 if (entry.getWord().equals(word)) {
@@ -314,7 +398,7 @@ public class EditWordActivity extends Activity {
         Language most_words = null;
 
 language_search:
-        for (Language language : mDb.getLanguages()) {
+        for (Language language : mLanguages) {
             if (most_words == null || most_words.getNumWords() < language.getNumWords())
                 most_words = language;
 
@@ -338,10 +422,15 @@ language_search:
         if (!mMainWordEntry.getWord().isInDatabase())
             return;
 
-        mDb.resetPracticeInfoById(mMainWordEntry.getWord().getId());
+        final Word word = mMainWordEntry.getWord();
+        mExecutor.write(new DatabaseExecutor.Operation<Boolean>() {
+            public Boolean run(Database db) {
+                return db.resetPracticeInfoById(word.getId());
+            }
+        }, null);
 
         String message = String.format(getResources().getString(R.string.score_was_reset),
-                                       mMainWordEntry.getWord().getName());
+                                       word.getName());
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
 
@@ -366,18 +455,18 @@ language_search:
     protected Dialog onCreateDialog(int id) {
         switch (id) {
             case SELECT_LANGUAGE_DIALOG:
-                final Cursor cursor = mDb.getLanguagesCursor();
+                String[] names = new String[mLanguages.size()];
+                for (int i = 0; i < names.length; i++)
+                    names[i] = mLanguages.get(i).getName();
+
                 return new AlertDialog.Builder(this)
                     .setTitle(R.string.select_language)
-                    .setCursor(cursor, new DialogInterface.OnClickListener() {
+                    .setItems(names, new DialogInterface.OnClickListener() {
                         public void onClick(DialogInterface dialog, int which) {
-                            cursor.moveToPosition(which);
-                            Language language = mDb.getLanguage(
-                                    cursor.getLong(Database.LANGUAGES_ID_COLUMN));
-                            mLanguageListener.setLanguage(language);
+                            mLanguageListener.setLanguage(mLanguages.get(which));
                             mLanguageListener = null;
                         }
-                    }, "name")
+                    })
                     .setOnCancelListener(new DialogInterface.OnCancelListener() {
                         public void onCancel(DialogInterface dialog) {
                             mLanguageListener.cancelSetLanguage();
@@ -390,11 +479,12 @@ language_search:
     }
 
     private CursorAdapter getWordsAdapter(final Word word) {
+        // The cursor is only set once the user starts typing, since the
+        // filtering runs in a background thread.
         SimpleCursorAdapter adapter = new SimpleCursorAdapter(
                 this,
                 android.R.layout.simple_dropdown_item_1line,
-                mDb.getWordsCursor(word.getLanguage(), word.getName(),
-                                   mMainWordEntry.getWord()),
+                null,
                 new String[] {
                     Database.WORDS_NAME_COLUMN,
                 },
@@ -404,18 +494,17 @@ language_search:
         adapter.setStringConversionColumn(Database.WORDS_NAME_COLUMN_ID);
         adapter.setFilterQueryProvider(new FilterQueryProvider() {
             public Cursor runQuery(CharSequence constraint) {
-                return mDb.getWordsCursor(word.getLanguage(),
-                                          (constraint != null) ? constraint.toString() : "",
-                                          mMainWordEntry.getWord());
+                Cursor cursor = mDb.getWordsCursor(
+                        word.getLanguage(),
+                        (constraint != null) ? constraint.toString() : "",
+                        mMainWordEntry.getWord());
+                startManagingCursor(cursor);
+                return cursor;
             }
         });
         return adapter;
     }
 
-    private Word getWord(long id) {
-        return mDb.getWord(id);
-    }
-
 
     private static class WordEntry implements Serializable {
         protected Word mWord;
@@ -465,7 +554,11 @@ language_search:
                 mNameEditText.setOnItemClickListener(new AdapterView.OnItemClickListener() {
                     public void onItemClick(AdapterView<?> parent, View view,
                                             int position, long id) {
-                        changeWord(mActivity.getWord(id));
+                        // The suggestions are in the language of this word.
+                        Cursor cursor = (Cursor) parent.getItemAtPosition(position);
+                        changeWord(new Word(id,
+                                            cursor.getString(Database.WORDS_NAME_COLUMN_ID),
+                                            mWord.getLanguage()));
                     }
                 });
             }
@@ -545,9 +638,9 @@ language_search:
             mLanguageButtonHasFocus = mLanguageButton.hasFocus();
         }
 
+        // Must be preceded by a call to syncFromView(), since this can be
+        // called from a background thread.
         public void saveToDatabase(Database db) {
-            syncFromView();
-
             if (mWord.isEmpty())
                 return;
 
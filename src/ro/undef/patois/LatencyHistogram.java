@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A histogram of latencies in microseconds, with log-linear buckets like
+// HdrHistogram: each power of two is split into SUB_BUCKETS buckets of
+// equal width, so the values are kept with a relative error of at most
+// 1 / SUB_BUCKETS (about 6%), from 1 microsecond to about 25 days, in a
+// fixed amount of memory.  Recording a value only does atomic increments,
+// so it never blocks, and can be done concurrently by any number of threads.
+//
+// The readers may see a value in some of the counters but not yet in the
+// others, which is fine for statistics.
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^MAX_BITS microseconds or more go into the last bucket.
+    private static final int MAX_BITS = 41;
+    private static final int NUM_BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mCount;
+    private final AtomicLong mTotal;
+    private final AtomicLong mMax;
+
+    public LatencyHistogram() {
+        mCounts = new AtomicLongArray(NUM_BUCKETS);
+        mCount = new AtomicLong();
+        mTotal = new AtomicLong();
+        mMax = new AtomicLong();
+    }
+
+    public void record(long micros) {
+        if (micros < 0)
+            micros = 0;
+
+        mCounts.incrementAndGet(getBucket(micros));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(micros);
+
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros))
+            max = mMax.get();
+    }
+
+    // The number of recorded values.
+    public long getCount() {
+        return mCount.get();
+    }
+
+    // The sum of the recorded values.
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    // Returns the value below which the given percentage of the recorded
+    // values fall, rounded up to the top of its bucket (but not above the
+    // maximum).  Returns 0 if there are no values.
+    public long getPercentile(double percent) {
+        long count = getCount();
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percent / 100 * count);
+        if (rank < 1)
+            rank = 1;
+
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += mCounts.get(bucket);
+            if (seen >= rank && bucket < NUM_BUCKETS - 1)
+                return Math.min(getBucketMax(bucket), getMax());
+        }
+        return getMax();
+    }
+
+    public int getNumBuckets() {
+        return NUM_BUCKETS;
+    }
+
+    // The number of values recorded in a bucket.
+    public long getBucketCount(int bucket) {
+        return mCounts.get(bucket);
+    }
+
+    // The largest value which goes into a bucket.
+    public static long getBucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    // The values below SUB_BUCKETS have a bucket of their own.  The larger
+    // ones are grouped by their highest bit, and then by the SUB_BUCKET_BITS
+    // bits which follow it.
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit >= MAX_BITS)
+            return NUM_BUCKETS - 1;
+
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+}
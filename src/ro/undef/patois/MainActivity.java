@@ -29,6 +29,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
 
@@ -38,15 +39,18 @@ public class MainActivity extends Activity {
     private static final int SELECT_LANGUAGE_DIALOG = 1;
     private static final int DATABASE_SAVER_DIALOG_BASE = 100;
     private static final int WORDS_EXPORTER_DIALOG_BASE = 200;
+    private static final int WORDS_IMPORTER_DIALOG_BASE = 300;
 
     private Database mDb;
+    private DatabaseExecutor mExecutor;
     private BackgroundWorkers mWorkers;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mDb = new Database(this);
+        mDb = PatoisApplication.acquireDatabase(this);
+        mExecutor = new DatabaseExecutor(mDb);
 
         mWorkers = (BackgroundWorkers) getLastNonConfigurationInstance();
         if (mWorkers == null) {
@@ -55,18 +59,31 @@ public class MainActivity extends Activity {
             // We only check for an empty database when the activity is first
             // started.  If we're being restarted because of a configuration
             // change, mWorkers will be non-null at this point.
-            if (mDb.getLanguagesCursor().getCount() == 0)
-                startEditLanguagesActivity();
+            Cursor cursor = mDb.getLanguagesCursor();
+            try {
+                if (cursor.getCount() == 0)
+                    startEditLanguagesActivity();
+            } finally {
+                cursor.close();
+            }
         }
         mWorkers.attach(this);
 
         setupViews();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        // The words might have been practiced or edited in the meantime.
+        updateStats();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDb.close();
+        mExecutor.close();
     }
 
     @Override
@@ -97,6 +114,10 @@ public class MainActivity extends Activity {
                 mWorkers.exportWords();
                 return true;
             }
+            case R.id.import_words: {
+                mWorkers.importWords();
+                return true;
+            }
         }
         return false;
     }
@@ -110,6 +131,7 @@ public class MainActivity extends Activity {
         switch (id) {
             case SELECT_LANGUAGE_DIALOG: {
                 final Cursor cursor = mDb.getLanguagesCursor();
+                startManagingCursor(cursor);
                 return new AlertDialog.Builder(this)
                     .setTitle(R.string.select_language)
                     .setCursor(cursor, new DialogInterface.OnClickListener() {
@@ -142,6 +164,13 @@ public class MainActivity extends Activity {
                 showDialog(SELECT_LANGUAGE_DIALOG);
             }
         });
+        // The database metrics are a debugging aid, so they're not in the menu.
+        view.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v) {
+                startMetricsActivity();
+                return true;
+            }
+        });
 
         Button button = (Button) findViewById(R.id.browse_words);
         button.setOnClickListener(new View.OnClickListener() {
@@ -206,9 +235,60 @@ public class MainActivity extends Activity {
         button.setEnabled(enabled);
     }
 
+    // Loads the practice statistics of the active language in the
+    // background, and shows them once they're ready.
+    private void updateStats() {
+        mExecutor.read(new DatabaseExecutor.Operation<PracticeStats>() {
+            public PracticeStats run(Database db) {
+                Language language = db.getActiveLanguage();
+                return language != null ? db.getPracticeStats(language) : null;
+            }
+        }, new DatabaseExecutor.Callback<PracticeStats>() {
+            public void onResult(PracticeStats stats) {
+                showStats(stats);
+            }
+        });
+    }
+
+    private void showStats(PracticeStats stats) {
+        TextView summary = (TextView) findViewById(R.id.main_summary);
+        if (stats == null || stats.getNumWords() == 0) {
+            summary.setVisibility(View.GONE);
+            findViewById(R.id.from_foreign_health).setVisibility(View.GONE);
+            findViewById(R.id.to_foreign_health).setVisibility(View.GONE);
+            return;
+        }
+
+        summary.setText(String.format(getResources().getString(R.string.language_summary),
+                                      stats.getNumWords(), stats.getAverageStars()));
+        summary.setVisibility(View.VISIBLE);
+
+        showHealthBar(R.id.from_foreign_health, stats, Trainer.Direction.FROM_FOREIGN);
+        showHealthBar(R.id.to_foreign_health, stats, Trainer.Direction.TO_FOREIGN);
+    }
+
+    private void showHealthBar(int id, PracticeStats stats, Trainer.Direction direction) {
+        View bar = findViewById(id);
+        setHealthBarWeight(bar, R.id.health_good,
+                           stats.getNumWords(direction, PracticeStats.GOOD));
+        setHealthBarWeight(bar, R.id.health_average,
+                           stats.getNumWords(direction, PracticeStats.AVERAGE));
+        setHealthBarWeight(bar, R.id.health_bad,
+                           stats.getNumWords(direction, PracticeStats.BAD));
+        bar.setVisibility(View.VISIBLE);
+        bar.requestLayout();
+    }
+
+    private void setHealthBarWeight(View bar, int id, int numWords) {
+        View segment = bar.findViewById(id);
+        ((LinearLayout.LayoutParams) segment.getLayoutParams()).weight = numWords;
+        segment.setVisibility(numWords > 0 ? View.VISIBLE : View.GONE);
+    }
+
     private void activateLanguageId(long id) {
         mDb.setActiveLanguageId(id);
         updateLabels();
+        updateStats();
     }
 
     private void startEditLanguagesActivity() {
@@ -230,6 +310,12 @@ public class MainActivity extends Activity {
         startActivity(intent);
     }
 
+    private void startMetricsActivity() {
+        Intent intent = new Intent();
+        intent.setClass(this, MetricsActivity.class);
+        startActivity(intent);
+    }
+
     private void startPracticeActivity(Trainer.Direction direction) {
         Intent intent = new Intent();
         intent.setClass(this, PracticeActivity.class);
@@ -243,6 +329,7 @@ public class MainActivity extends Activity {
             case R.id.select_language:
                 mDb.clearLanguagesCache();
                 updateLabels();
+                updateStats();
                 break;
         }
     }
@@ -250,20 +337,24 @@ public class MainActivity extends Activity {
     private class BackgroundWorkers {
         private DatabaseSaver mDbSaver;
         private WordsExporter mWordsExporter;
+        private WordsImporter mWordsImporter;
 
         public BackgroundWorkers() {
             mDbSaver = new DatabaseSaver(DATABASE_SAVER_DIALOG_BASE);
             mWordsExporter = new WordsExporter(WORDS_EXPORTER_DIALOG_BASE);
+            mWordsImporter = new WordsImporter(WORDS_IMPORTER_DIALOG_BASE);
         }
 
         public void attach(Activity activity) {
             mDbSaver.attach(activity);
             mWordsExporter.attach(activity);
+            mWordsImporter.attach(activity);
         }
 
         public void detach() {
             mDbSaver.detach();
             mWordsExporter.detach();
+            mWordsImporter.detach();
         }
 
         public Dialog onCreateDialog(int id) {
@@ -275,6 +366,10 @@ public class MainActivity extends Activity {
             if (dialog != null)
                 return dialog;
 
+            dialog = mWordsImporter.onCreateDialog(id);
+            if (dialog != null)
+                return dialog;
+
             return null;
         }
 
@@ -285,5 +380,9 @@ public class MainActivity extends Activity {
         public void exportWords() {
             mWordsExporter.start();
         }
+
+        public void importWords() {
+            mWordsImporter.start();
+        }
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.app.Activity;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+// A debug screen showing the DatabaseMetrics and the PracticeTrace of the
+// last practice sessions, which can also turn the recording on and off, and
+// dump the metrics as JSON next to the database backup.  It's reached by long-pressing the title of MainActivity.
+
+public class MetricsActivity extends Activity {
+    private final static String TAG = "MetricsActivity";
+
+    private static final String METRICS_FILE_NAME = "patois-metrics.json";
+
+    private Database mDb;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mDb = PatoisApplication.acquireDatabase(this);
+        setContentView(R.layout.metrics_activity);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDb.release();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.metrics_activity_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+
+        menu.findItem(R.id.record_metrics).setChecked(DatabaseMetrics.isEnabled());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.record_metrics: {
+                mDb.setMetricsEnabled(!DatabaseMetrics.isEnabled());
+                showMetrics();
+                return true;
+            }
+            case R.id.reset_metrics: {
+                DatabaseMetrics.reset();
+                PracticeTrace.reset();
+                showMetrics();
+                return true;
+            }
+            case R.id.dump_metrics: {
+                dumpMetrics();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void showMetrics() {
+        Resources res = getResources();
+        StringBuilder text = new StringBuilder();
+
+        if (!DatabaseMetrics.isEnabled())
+            text.append(res.getString(R.string.metrics_disabled)).append("\n\n");
+
+        for (DatabaseMetrics.Method method : DatabaseMetrics.getMethods()) {
+            LatencyHistogram latency = method.latency;
+            text.append(String.format(res.getString(R.string.method_metrics),
+                                      method.name, method.getNumCalls(),
+                                      method.numRows.get(),
+                                      toMillis(latency.getPercentile(50)),
+                                      toMillis(latency.getPercentile(90)),
+                                      toMillis(latency.getPercentile(99)),
+                                      toMillis(latency.getMax())));
+        }
+        if (DatabaseMetrics.getMethods().isEmpty())
+            text.append(res.getString(R.string.no_metrics));
+
+        for (PracticeTrace trace : PracticeTrace.getSessions()) {
+            text.append("\n");
+            text.append(String.format(res.getString(R.string.practice_session),
+                                      new Date(trace.startTime * 1000), trace.direction));
+            for (int i = 0; i < PracticeTrace.NUM_INTERVALS; i++) {
+                LatencyHistogram latency = trace.getInterval(i);
+                text.append(String.format(res.getString(R.string.interval_metrics),
+                                          PracticeTrace.getIntervalName(i),
+                                          latency.getCount(),
+                                          toMillis(latency.getPercentile(50)),
+                                          toMillis(latency.getPercentile(90)),
+                                          toMillis(latency.getPercentile(99)),
+                                          toMillis(latency.getMax())));
+            }
+        }
+
+        ((TextView) findViewById(R.id.metrics)).setText(text);
+    }
+
+    private static float toMillis(long micros) {
+        return micros / 1000.0f;
+    }
+
+    // The metrics only take a few kilobytes, so they're written right away.
+    private void dumpMetrics() {
+        File file = new File(Database.getDefaultBackupFile().getParentFile(),
+                             METRICS_FILE_NAME);
+        int message = R.string.metrics_dumped;
+
+        try {
+            Writer out = new BufferedWriter(new FileWriter(file));
+            try {
+                DatabaseMetrics.writeJson(out, System.currentTimeMillis() / 1000);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file, e);
+            message = R.string.metrics_dump_failed;
+        }
+
+        Toast.makeText(this, String.format(getResources().getString(message), file),
+                       Toast.LENGTH_LONG).show();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.database.AbstractCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// A cursor over a large, sorted query result, which only loads the pages of
+// rows that are actually looked at.  Only the row count is needed upfront,
+// so opening the cursor doesn't depend on the size of the result.
+//
+// The pages are loaded by a PageLoader.  Whenever the previous page has
+// been loaded before, the loader gets its last row, so it can continue from
+// there using the sort keys (keyset pagination); otherwise (e.g., after a
+// jump with the fast scroller), it has to fall back to an offset.  Once a
+// page is half read, the next one is prefetched in the background.  Only
+// the most recently used pages are kept in memory.
+//
+// The queries run without mLock held, so that the thread using the cursor
+// never waits for a prefetch; the lock is only taken to read and install the
+// pages.  A page loaded while the cached pages were dropped (e.g., by
+// requery() or removeRow()) is not installed, since it might be outdated.
+//
+// Single rows can be patched in place with updateRow() and removeRow(), so
+// that changing or deleting one word doesn't require reloading the result.
+
+public class PagedCursor extends AbstractCursor {
+    private final static String TAG = "PagedCursor";
+
+    private static final int MAX_CACHED_PAGES = 8;
+
+    public interface PageLoader {
+        // Returns the number of rows of the result.
+        public int getCount();
+
+        // Returns the limit rows which follow lastRow, the last row of the
+        // previous page.  If lastRow is null, returns the limit rows starting
+        // at offset instead.  The columns must match the ones passed to the
+        // PagedCursor constructor.
+        public Cursor loadPage(Object[] lastRow, int offset, int limit);
+
+        // Returns the row whose _id is id, or no rows if it's no longer
+        // part of the result.
+        public Cursor loadRow(long id);
+    }
+
+    private final String[] mColumnNames;
+    // Whether each column holds text (read with getString()) or integers
+    // (read with getLong()).
+    private final boolean[] mIsText;
+    private final int mPageSize;
+    private final PageLoader mLoader;
+    private final int mIdColumn;
+
+    private final Object mLock = new Object();
+    private int mCount;
+    // The most recently used pages, indexed by page number.
+    private LinkedHashMap<Integer, Object[][]> mPages;
+    // The last row of each page loaded so far, including the ones no longer
+    // in mPages, so that loading the next page can always use the sort keys.
+    private HashMap<Integer, Object[]> mLastRows;
+    // The page being prefetched, or -1.
+    private int mPrefetchingPage;
+    // Incremented whenever the cached pages are dropped.
+    private int mGeneration;
+
+    // The current row.
+    private Object[] mRow;
+    private final Object[] mEmptyRow;
+
+    public PagedCursor(String[] columnNames, boolean[] isText, int pageSize,
+                       PageLoader loader) {
+        mColumnNames = columnNames;
+        mIsText = isText;
+        mPageSize = pageSize;
+        mLoader = loader;
+        mIdColumn = getColumnIndexOrThrow("_id");
+
+        mPages = new LinkedHashMap<Integer, Object[][]>(MAX_CACHED_PAGES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        mLastRows = new HashMap<Integer, Object[]>();
+        mPrefetchingPage = -1;
+        mGeneration = 0;
+
+        // Shown in place of the rows that disappeared since the count was
+        // taken, until the cursor is reloaded.
+        mEmptyRow = new Object[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++)
+            mEmptyRow[i] = isText[i] ? (Object) "" : (Object) Long.valueOf(0);
+
+        mCount = loader.getCount();
+    }
+
+    @Override
+    public int getCount() {
+        synchronized (mLock) {
+            return mCount;
+        }
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int pageNumber = newPosition / mPageSize;
+        int index = newPosition % mPageSize;
+
+        Object[][] page = getPage(pageNumber);
+        mRow = (index < page.length) ? page[index] : mEmptyRow;
+
+        if (index >= mPageSize / 2)
+            prefetchPage(pageNumber + 1);
+
+        return true;
+    }
+
+    @Override
+    public boolean requery() {
+        int count = mLoader.getCount();
+        synchronized (mLock) {
+            clearPages();
+            mCount = count;
+        }
+        return super.requery();
+    }
+
+    @Override
+    public void deactivate() {
+        synchronized (mLock) {
+            clearPages();
+        }
+        super.deactivate();
+    }
+
+    @Override
+    public void close() {
+        synchronized (mLock) {
+            clearPages();
+        }
+        super.close();
+    }
+
+    private void clearPages() {
+        mPages.clear();
+        mLastRows.clear();
+        mGeneration++;
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = mRow[column];
+        return (value != null) ? value.toString() : null;
+    }
+
+    // Copies the string without allocating anything (unlike the default
+    // implementation, which calls getString()).
+    @Override
+    public void copyStringToBuffer(int column, CharArrayBuffer buffer) {
+        String value = getString(column);
+        if (value == null) {
+            buffer.sizeCopied = 0;
+            return;
+        }
+
+        int length = value.length();
+        if (buffer.data == null || buffer.data.length < length)
+            buffer.data = new char[length];
+        value.getChars(0, length, buffer.data, 0);
+        buffer.sizeCopied = length;
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = mRow[column];
+        if (value instanceof Long)
+            return (Long) value;
+        return (value != null) ? Long.parseLong(value.toString()) : 0;
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mRow[column] == null;
+    }
+
+    // Loads the current values of the row whose _id is id, for passing them
+    // to updateRow().  Returns null if the row is no longer part of the
+    // result.  Meant to be called from a background thread.
+    public Object[] loadRow(long id) {
+        Cursor cursor = mLoader.loadRow(id);
+        try {
+            return cursor.moveToFirst() ? readRow(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Replaces the cached row which has the same _id as row.  The row keeps
+    // its position, even if its sort keys changed, until the cursor is
+    // requeried.  Returns false if the row isn't in one of the cached pages,
+    // in which case there's nothing to patch.
+    //
+    // This and removeRow() must be called on the thread using the cursor,
+    // followed by a notification of the adapter.
+    public boolean updateRow(Object[] row) {
+        synchronized (mLock) {
+            long id = (Long) row[mIdColumn];
+            for (Object[][] page : mPages.values()) {
+                for (int i = 0; i < page.length; i++) {
+                    if ((Long) page[i][mIdColumn] == id) {
+                        // The last rows of the pages are left alone, since
+                        // the following pages were loaded using the old values.
+                        page[i] = row;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // Removes the row whose _id is id from the result.  The page holding it
+    // and the following ones are dropped, and are reloaded (without the row)
+    // when needed; the pages before it are still valid.  Returns false if
+    // the row isn't in one of the cached pages, in which case its position
+    // is unknown and the cursor has to be requeried.
+    public boolean removeRow(long id) {
+        synchronized (mLock) {
+            int removedPage = -1;
+            for (Map.Entry<Integer, Object[][]> entry : mPages.entrySet()) {
+                for (Object[] row : entry.getValue()) {
+                    if ((Long) row[mIdColumn] == id) {
+                        removedPage = entry.getKey();
+                        break;
+                    }
+                }
+            }
+            if (removedPage == -1)
+                return false;
+
+            mCount--;
+            mPages.keySet().removeAll(getPagesFrom(mPages.keySet(), removedPage));
+            mLastRows.keySet().removeAll(getPagesFrom(mLastRows.keySet(), removedPage));
+            mGeneration++;
+            return true;
+        }
+    }
+
+    private static ArrayList<Integer> getPagesFrom(Set<Integer> pageNumbers, int first) {
+        ArrayList<Integer> pages = new ArrayList<Integer>();
+        for (int pageNumber : pageNumbers) {
+            if (pageNumber >= first)
+                pages.add(pageNumber);
+        }
+        return pages;
+    }
+
+    private Object[][] getPage(int pageNumber) {
+        synchronized (mLock) {
+            Object[][] page = mPages.get(pageNumber);
+            if (page != null)
+                return page;
+        }
+        return loadPage(pageNumber);
+    }
+
+    private void prefetchPage(final int pageNumber) {
+        synchronized (mLock) {
+            if (pageNumber * mPageSize >= mCount || pageNumber == mPrefetchingPage ||
+                    mPages.containsKey(pageNumber))
+                return;
+            mPrefetchingPage = pageNumber;
+        }
+
+        DatabaseExecutor.prefetch(new Runnable() {
+            public void run() {
+                try {
+                    boolean needed;
+                    synchronized (mLock) {
+                        needed = !isClosed() && !mPages.containsKey(pageNumber);
+                    }
+                    if (needed)
+                        loadPage(pageNumber);
+                } catch (IllegalStateException e) {
+                    // The database was closed in the meantime.
+                    Log.d(TAG, "Could not prefetch page " + pageNumber, e);
+                } finally {
+                    synchronized (mLock) {
+                        if (mPrefetchingPage == pageNumber)
+                            mPrefetchingPage = -1;
+                    }
+                }
+            }
+        });
+    }
+
+    // Must be called without mLock held.  Returns the loaded page, or the
+    // cached one if another thread loaded it in the meantime.
+    private Object[][] loadPage(int pageNumber) {
+        Object[] lastRow;
+        int generation;
+        synchronized (mLock) {
+            lastRow = mLastRows.get(pageNumber - 1);
+            generation = mGeneration;
+        }
+
+        Cursor cursor = mLoader.loadPage(lastRow, pageNumber * mPageSize, mPageSize);
+
+        Object[][] page;
+        try {
+            page = new Object[cursor.getCount()][];
+            for (int i = 0; cursor.moveToNext(); i++)
+                page[i] = readRow(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (mLock) {
+            if (generation != mGeneration)
+                return page;
+
+            Object[][] cachedPage = mPages.get(pageNumber);
+            if (cachedPage != null)
+                return cachedPage;
+
+            mPages.put(pageNumber, page);
+            if (page.length > 0)
+                mLastRows.put(pageNumber, page[page.length - 1]);
+        }
+
+        return page;
+    }
+
+    private Object[] readRow(Cursor cursor) {
+        int numColumns = mColumnNames.length;
+        Object[] row = new Object[numColumns];
+        for (int column = 0; column < numColumns; column++) {
+            if (cursor.isNull(column))
+                row[column] = null;
+            else if (mIsText[column])
+                row[column] = cursor.getString(column);
+            else
+                row[column] = cursor.getLong(column);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.app.Application;
+import android.content.Context;
+
+// Owns the Database shared by all the activities and background tasks of the
+// process.  Opening the database (and checking its schema) is done once, the
+// first time it's needed, instead of on every screen transition, and the
+// language cache and the precompiled statements are shared as well.
+//
+// The users of the database call acquireDatabase() when they start and
+// Database.release() when they're done.  The database is closed once the
+// last user releases it.
+
+public class PatoisApplication extends Application {
+    private final static String TAG = "PatoisApplication";
+
+    private Database mDatabase;
+    private int mNumDatabaseUsers;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mDatabase = null;
+        mNumDatabaseUsers = 0;
+    }
+
+    public static Database acquireDatabase(Context context) {
+        return ((PatoisApplication) context.getApplicationContext()).acquireDatabase();
+    }
+
+    public synchronized Database acquireDatabase() {
+        if (mDatabase == null)
+            mDatabase = new Database(this);
+        mNumDatabaseUsers++;
+
+        return mDatabase;
+    }
+
+    // Called by Database.release().
+    synchronized void releaseDatabase(Database db) {
+        if (db != mDatabase || mNumDatabaseUsers == 0)
+            throw new IllegalStateException("Database released too many times");
+
+        mNumDatabaseUsers--;
+        if (mNumDatabaseUsers == 0) {
+            mDatabase.close();
+            mDatabase = null;
+        }
+    }
+
+    // Closes the database file while it's being replaced behind our back
+    // (e.g., when restoring a backup).  The users keep their Database, but
+    // must not touch it until reopenDatabase() is called.  The
+    // DatabaseExecutor operations are suspended until then, and the pending
+    // answers are saved first, so they don't end up in the new file (or
+    // get lost).  This waits for the running operations, so it must be
+    // called from a background thread other than theirs.
+    public static void suspendDatabase(Context context) {
+        PatoisApplication application = (PatoisApplication) context.getApplicationContext();
+        DatabaseExecutor.suspend();
+
+        Database db = application.acquireDatabase();
+        try {
+            Trainer.flushAnswers(db);
+        } finally {
+            db.release();
+        }
+
+        synchronized (application) {
+            if (application.mDatabase != null)
+                application.mDatabase.close();
+        }
+    }
+
+    public static void reopenDatabase(Context context) {
+        PatoisApplication application = (PatoisApplication) context.getApplicationContext();
+        synchronized (application) {
+            if (application.mDatabase != null)
+                application.mDatabase.open();
+        }
+        DatabaseExecutor.resume();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.Set;
+
+// Selects words from the in-memory CandidatePool kept by the Database.  The
+// pool is only read from the database once per language, so picking a word
+// takes O(log n) time and doesn't run any queries.
+
+public class PoolSampler implements Trainer.Sampler {
+    private Database mDb;
+    private Random mRandom;
+
+    public PoolSampler(Database db) {
+        mDb = db;
+        mRandom = new Random();
+    }
+
+    public long[] selectWords(Language language, Trainer.Direction direction, int count,
+                              Set<Long> excludedWordIds) throws Trainer.EmptyException {
+        CandidatePool pool = mDb.getCandidatePool(language, direction);
+
+        long[] wordIds = pool.select(System.currentTimeMillis() / 1000, mRandom, count,
+                                     excludedWordIds);
+        if (wordIds.length == 0)
+            throw new Trainer.EmptyException();
+
+        return wordIds;
+    }
+}
@@ -27,6 +27,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
@@ -43,7 +44,10 @@ public class PracticeActivity extends Activity {
     private final static int STATE_ANSWER = 1;
 
     private Database mDb;
+    private DatabaseExecutor mExecutor;
     private Trainer mTrainer;
+    // Created on the first selection, since it needs the active language.
+    private PracticeSession mSession;
 
     private LayoutInflater mInflater;
     private ScoreRenderer mScoreRenderer;
@@ -57,55 +61,286 @@ public class PracticeActivity extends Activity {
     private Animation[] mButtonsInAnimation;
     private Animation[] mRestartOutAnimation;
     private Animation[] mRestartInAnimation;
+    // The animation to start once the next word is loaded.
+    private Animation mPendingAnimation;
+
+    // The next word to show, loaded in the background while the current one
+    // is being practiced.  mNextCard is null if there are no more words to
+    // practice, and only meaningful once mNextCardReady is true.
+    private Card mNextCard;
+    private boolean mNextCardReady;
+    // Incremented whenever the prefetched card is discarded, so that the
+    // results of outdated prefetches are ignored.
+    private int mPrefetchGeneration;
+    // Set once the current word has been answered, while it animates out.
+    private boolean mAnswered;
+
+    // mTrace is only set while the metrics are recorded (see PracticeTrace).
+    private PracticeTrace mTrace;
+    private FrameTracer mRestartFrames;
+    private FrameTracer mButtonsFrames;
+    // The System.nanoTime() of the last tap on "yes" or "no", until the next
+    // word is shown, and of the last tap on "show", until the answer is
+    // shown.  Otherwise, they are 0.
+    private long mAnswerTime;
+    private long mShowTime;
 
     // These fields are saved across restarts.
     private Trainer.Direction mDirection;
     private int mState;
+    // mWord is null while the next word is being loaded.
     private Word mWord;
     private ArrayList<Word> mTranslations;
+    private Trainer.PracticeInfo mPracticeInfo;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        try {
-            mDb = new Database(this);
-            mTrainer = new Trainer(mDb);
-
-            if (savedInstanceState != null) {
-                loadStateFromBundle(savedInstanceState);
-            } else {
-                String action = getIntent().getAction();
-                resetState(Trainer.Direction.fromAction(action));
-            }
+        mDb = PatoisApplication.acquireDatabase(this);
+        mExecutor = new DatabaseExecutor(mDb);
+        mTrainer = new Trainer(mDb);
 
-            setupViews();
-        } catch (Trainer.EmptyException ex) {
-            Toast.makeText(this, R.string.no_words_for_practice, Toast.LENGTH_LONG).show();
-            finish();
+        setupViews();
+
+        if (savedInstanceState != null) {
+            loadStateFromBundle(savedInstanceState);
+        } else {
+            mDirection = Trainer.Direction.fromAction(getIntent().getAction());
+            mState = STATE_QUESTION;
+        }
+
+        mTrace = PracticeTrace.startSession(System.currentTimeMillis() / 1000,
+                                            mDirection.name());
+
+        // This also replays the answers left unsaved by a crash, before any
+        // word is selected.
+        flushAnswers();
+
+        if (mWord != null) {
+            updateViews();
+            prefetchNextWord();
+        } else {
+            loadNextWord(-1);
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        flushAnswers();
+
+        // Nothing is drawn until the activity is resumed, so the next frame
+        // would seem to have taken forever.
+        mRestartFrames.stop();
+        mButtonsFrames.stop();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDb.close();
+        mExecutor.close();
     }
 
-    private void resetState(Trainer.Direction direction) throws Trainer.EmptyException {
-        mDirection = direction;
+    // Everything needed for showing a word, loaded in the background.
+    private static class Card {
+        public Word word;
+        public ArrayList<Word> translations;
+        public Trainer.PracticeInfo practiceInfo;
+
+        // Returns null if the word doesn't exist (anymore).
+        public static Card load(Database db, Trainer trainer, long wordId,
+                                Trainer.Direction direction) {
+            Card card = new Card();
+            card.word = db.getWord(wordId);
+            if (card.word == null)
+                return null;
+
+            card.translations = db.getTranslations(card.word);
+            card.practiceInfo = trainer.getPracticeInfo(card.word, direction);
+
+            return card;
+        }
+    }
+
+    // Loads and shows the next word other than currentWordId (which may be
+    // -1), or ends the practice if there are no more words to practice.
+    private void loadNextWord(final long currentWordId) {
+        final Trainer.Direction direction = mDirection;
+
+        mExecutor.read(new DatabaseExecutor.Operation<Card>() {
+            public Card run(Database db) {
+                return selectCard(db, direction, currentWordId);
+            }
+        }, new DatabaseExecutor.Callback<Card>() {
+            public void onResult(Card card) {
+                if (card == null) {
+                    Toast.makeText(PracticeActivity.this, R.string.no_words_for_practice,
+                                   Toast.LENGTH_LONG).show();
+                    finish();
+                    return;
+                }
+
+                mAnswered = false;
+                mState = STATE_QUESTION;
+                showCard(card);
+            }
+        });
+    }
+
+    // Called on a background thread.  Returns the card of the next word in
+    // the session, other than currentWordId, or null if there are no more
+    // words to practice.
+    private Card selectCard(Database db, Trainer.Direction direction, long currentWordId) {
+        PracticeSession session = getSession(db, direction);
+        try {
+            while (true) {
+                Card card = Card.load(db, mTrainer, session.nextWord(currentWordId),
+                                      direction);
+                // Skip the words deleted since they were selected.
+                if (card != null)
+                    return card;
+            }
+        } catch (Trainer.EmptyException ex) {
+            return null;
+        }
+    }
+
+    private synchronized PracticeSession getSession(Database db,
+                                                    Trainer.Direction direction) {
+        if (mSession == null)
+            mSession = mTrainer.startSession(db.getActiveLanguage(), direction);
+        return mSession;
+    }
+
+    private synchronized void resetSession() {
+        if (mSession != null)
+            mSession.reset();
+    }
+
+    // Starts loading the word that will follow the current one.  The current
+    // word is excluded from the selection, since it can't be picked again
+    // right after it's answered.
+    private void prefetchNextWord() {
+        final Trainer.Direction direction = mDirection;
+        final long currentWordId = mWord.getId();
+        final int generation = ++mPrefetchGeneration;
+
+        mNextCard = null;
+        mNextCardReady = false;
+
+        mExecutor.read(new DatabaseExecutor.Operation<Card>() {
+            public Card run(Database db) {
+                return selectCard(db, direction, currentWordId);
+            }
+        }, new DatabaseExecutor.Callback<Card>() {
+            public void onResult(Card card) {
+                if (generation != mPrefetchGeneration)
+                    return;
+
+                mNextCard = card;
+                mNextCardReady = true;
+
+                // The current word has already animated out.
+                if (mAnswered && mPendingAnimation != null)
+                    showNextCard();
+            }
+        });
+    }
+
+    private void showNextCard() {
+        Card card = mNextCard;
+        mNextCard = null;
+        mNextCardReady = false;
+
+        // The prefetch ran while the current word was shown, so some words
+        // might have become due since then.  The selection is made again,
+        // after the answer is recorded (the reads wait for the writes
+        // submitted before them), and answers are still ignored until then.
+        if (card == null) {
+            loadNextWord(mWord.getId());
+            return;
+        }
+
+        mAnswered = false;
         mState = STATE_QUESTION;
-        loadWord(mTrainer.selectWord(mDb.getActiveLanguage(), mDirection));
+        showCard(card);
     }
 
-    private boolean loadWord(long wordId) {
-        mWord = mDb.getWord(wordId);
-        if (mWord == null)
-            return false;
+    private void showCard(Card card) {
+        mWord = card.word;
+        mTranslations = card.translations;
+        mPracticeInfo = card.practiceInfo;
+        updateViews();
+
+        if (mAnswerTime != 0) {
+            traceUntilDrawn(PracticeTrace.ANSWER_TO_NEXT_CARD, mAnswerTime);
+            mAnswerTime = 0;
+        }
+
+        if (mPendingAnimation != null) {
+            mRestartFrames.start();
+            mWholeScreen.startAnimation(mPendingAnimation);
+            mPendingAnimation = null;
+        }
+
+        prefetchNextWord();
+    }
+
+    // Records the time from start until the next frame is drawn.  The
+    // pre-draw listeners are called right before drawing, so the time is
+    // taken by a message posted from there, which runs after the drawing.
+    private void traceUntilDrawn(final int interval, final long start) {
+        mWholeScreen.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+            public boolean onPreDraw() {
+                mWholeScreen.getViewTreeObserver().removeOnPreDrawListener(this);
+                mWholeScreen.post(new Runnable() {
+                    public void run() {
+                        mTrace.record(interval, (System.nanoTime() - start) / 1000);
+                    }
+                });
+                return true;
+            }
+        });
+    }
 
-        mTranslations = mDb.getTranslations(mWord);
+    // Records the time between consecutive frames while an animation is
+    // running, from start() until stop().  Does nothing unless the metrics
+    // are recorded.
+    private class FrameTracer implements ViewTreeObserver.OnPreDrawListener {
+        private final int mInterval;
+        private boolean mRunning;
+        private long mLastFrameTime;
 
-        return true;
+        public FrameTracer(int interval) {
+            mInterval = interval;
+        }
+
+        public void start() {
+            if (mTrace == null || mRunning)
+                return;
+
+            mRunning = true;
+            mLastFrameTime = 0;
+            mWholeScreen.getViewTreeObserver().addOnPreDrawListener(this);
+        }
+
+        public void stop() {
+            if (!mRunning)
+                return;
+
+            mRunning = false;
+            mWholeScreen.getViewTreeObserver().removeOnPreDrawListener(this);
+        }
+
+        public boolean onPreDraw() {
+            long now = System.nanoTime();
+            if (mLastFrameTime != 0)
+                mTrace.record(mInterval, (now - mLastFrameTime) / 1000);
+            mLastFrameTime = now;
+            return true;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -114,14 +349,18 @@ public class PracticeActivity extends Activity {
         mState = savedInstanceState.getInt("state");
         mWord = (Word) savedInstanceState.getSerializable("word");
         mTranslations = (ArrayList<Word>) savedInstanceState.getSerializable("translations");
+        mPracticeInfo = (Trainer.PracticeInfo) savedInstanceState.getSerializable("practice_info");
     }
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         outState.putInt("direction", mDirection.getValue());
         outState.putInt("state", mState);
-        outState.putSerializable("word", mWord);
+        // Once the word is answered, we move on to the next one after the
+        // restart.
+        outState.putSerializable("word", mAnswered ? null : mWord);
         outState.putSerializable("translations", mTranslations);
+        outState.putSerializable("practice_info", mPracticeInfo);
     }
 
     @Override
@@ -135,6 +374,9 @@ public class PracticeActivity extends Activity {
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.edit_word: {
+                if (mWord == null || mAnswered)
+                    return true;
+
                 Intent intent = new Intent();
                 intent.setClass(this, EditWordActivity.class);
                 intent.setAction(Intent.ACTION_EDIT);
@@ -151,12 +393,33 @@ public class PracticeActivity extends Activity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         switch (requestCode) {
             case R.id.edit_word: {
-                // The word might have been deleted during the edit operation,
-                // so it's possible for loadWord() to return false.
-                if (loadWord(mWord.getId()))
-                    updateViews();
-                else
-                    finish();
+                if (mWord == null || mAnswered)
+                    break;
+
+                // The edit might have changed the translations of the
+                // prefetched word, too, so we'll load a new one after the
+                // current word is reloaded.  Until then, answers are ignored.
+                mPrefetchGeneration++;
+                mNextCardReady = false;
+                resetSession();
+
+                final long wordId = mWord.getId();
+                mWord = null;
+                final Trainer.Direction direction = mDirection;
+                mExecutor.read(new DatabaseExecutor.Operation<Card>() {
+                    public Card run(Database db) {
+                        return Card.load(db, mTrainer, wordId, direction);
+                    }
+                }, new DatabaseExecutor.Callback<Card>() {
+                    public void onResult(Card card) {
+                        // The word might have been deleted during the edit
+                        // operation.
+                        if (card != null)
+                            showCard(card);
+                        else
+                            finish();
+                    }
+                });
                 break;
             }
         }
@@ -220,12 +483,38 @@ public class PracticeActivity extends Activity {
         mRestartInAnimation[1] =
             AnimationUtils.loadAnimation(this, R.anim.practice_restart_yes_in);
 
-        updateViews();
+        mRestartFrames = new FrameTracer(PracticeTrace.RESTART_FRAME);
+        mButtonsFrames = new FrameTracer(PracticeTrace.BUTTONS_FRAME);
+
+        // The words animate out in saveStatsAndRestartAnimated(), and the
+        // buttons flip out and in at the same time.
+        Animation.AnimationListener stopRestartFrames = new Animation.AnimationListener() {
+            public void onAnimationEnd(Animation animation) {
+                mRestartFrames.stop();
+            }
+            public void onAnimationStart(Animation animation) {}
+            public void onAnimationRepeat(Animation animation) {}
+        };
+        for (Animation animation : mRestartInAnimation)
+            animation.setAnimationListener(stopRestartFrames);
+
+        Animation.AnimationListener stopButtonsFrames = new Animation.AnimationListener() {
+            public void onAnimationEnd(Animation animation) {
+                mButtonsFrames.stop();
+            }
+            public void onAnimationStart(Animation animation) {}
+            public void onAnimationRepeat(Animation animation) {}
+        };
+        for (Animation animation : mButtonsInAnimation)
+            animation.setAnimationListener(stopButtonsFrames);
+
+        // Nothing to show until the first word is loaded.
+        mQuestionButtons.setVisibility(View.GONE);
+        mAnswerButtons.setVisibility(View.GONE);
     }
 
     private void updateViews() {
-        mScoreView.setText(
-                mScoreRenderer.resetAndRenderScore(mDb.getPracticeInfo(mWord, mDirection)));
+        mScoreView.setText(mScoreRenderer.resetAndRenderScore(mPracticeInfo));
 
         mWordPanel.removeAllViews();
 
@@ -273,6 +562,8 @@ public class PracticeActivity extends Activity {
 
     private void showAnswer() {
         mState = STATE_ANSWER;
+        if (mTrace != null)
+            mShowTime = System.nanoTime();
 
         if (mDirection == Trainer.Direction.FROM_FOREIGN) {
             addToWordPanel(buildTranslationsPanel(), -1);
@@ -303,6 +594,11 @@ public class PracticeActivity extends Activity {
                 mWordPanel.addView(view, index);
                 mWordPanel.clearAnimation();
                 view.startAnimation(mFadeInAnimation);
+
+                if (mShowTime != 0) {
+                    traceUntilDrawn(PracticeTrace.SHOW_TO_ANSWER, mShowTime);
+                    mShowTime = 0;
+                }
             }
             public void onAnimationStart(Animation animation) {}
             public void onAnimationRepeat(Animation animation) {}
@@ -312,6 +608,7 @@ public class PracticeActivity extends Activity {
     }
 
     private void flipButtons() {
+        mButtonsFrames.start();
         mQuestionButtons.startAnimation(mButtonsOutAnimation[mDirection.getValue()]);
         mQuestionButtons.setVisibility(View.GONE);
         mAnswerButtons.startAnimation(mButtonsInAnimation[mDirection.getValue()]);
@@ -319,30 +616,61 @@ public class PracticeActivity extends Activity {
     }
 
     private void saveStatsAndRestartAnimated(final boolean knewAnswer) {
+        // Ignore the answers given while the word animates out, or while the
+        // next word is being loaded.
+        if (mWord == null || mAnswered)
+            return;
+
+        if (mTrace != null)
+            mAnswerTime = System.nanoTime();
+        saveStats(knewAnswer);
+
         final Animation animation_out = mRestartOutAnimation[knewAnswer ? 1 : 0];
         final Animation animation_in = mRestartInAnimation[knewAnswer ? 1 : 0];
 
         animation_out.setAnimationListener(new Animation.AnimationListener() {
             public void onAnimationEnd(Animation a) {
-                saveStatsAndRestart(knewAnswer);
-                mWholeScreen.startAnimation(animation_in);
+                mRestartFrames.stop();
+                mPendingAnimation = animation_in;
+                restart();
             }
             public void onAnimationStart(Animation animation) {}
             public void onAnimationRepeat(Animation animation) {}
         });
 
+        mRestartFrames.start();
         mWholeScreen.startAnimation(animation_out);
     }
 
-    private void saveStatsAndRestart(boolean knewAnswer) {
-        mTrainer.updatePracticeInfo(mWord, mDirection, knewAnswer);
+    // Saves all the answers given so far, before the user gets a chance to
+    // leave the application.
+    private void flushAnswers() {
+        mExecutor.write(new DatabaseExecutor.Operation<Void>() {
+            public Void run(Database db) {
+                mTrainer.flushAnswers();
+                return null;
+            }
+        }, null);
+    }
 
-        try {
-            resetState(mDirection);
-            updateViews();
-        } catch (Trainer.EmptyException ex) {
-            Toast.makeText(this, R.string.no_words_for_practice, Toast.LENGTH_LONG).show();
-            finish();
-        }
+    // Records the answer in the background, while the word animates out.
+    private void saveStats(final boolean knewAnswer) {
+        final Word word = mWord;
+        final Trainer.Direction direction = mDirection;
+        mAnswered = true;
+
+        mExecutor.write(new DatabaseExecutor.Operation<Void>() {
+            public Void run(Database db) {
+                mTrainer.updatePracticeInfo(word, direction, knewAnswer);
+                return null;
+            }
+        }, null);
+    }
+
+    private void restart() {
+        // Otherwise, the prefetch is still running, and it will show the next
+        // word when it's done.
+        if (mNextCardReady)
+            showNextCard();
     }
 }
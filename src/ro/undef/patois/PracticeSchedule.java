@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+// The spaced repetition schedule used by Trainer: how long to wait before
+// practicing a word again, depending on how well it's known, and how many
+// stars that level is worth.
+//
+// This is plain Java, so it's part of the core sources which can be built
+// and benchmarked without Android (see the "core" target in core.xml).
+
+public class PracticeSchedule {
+    public static long scheduleNextPractice(long now, int level) {
+        return now + getInterval(level);
+    }
+
+    // The minimum time in seconds between two practices of the same word.
+    private static final long[] PRACTICE_INTERVALS = {
+          6 * 60 * 60,        // level 0 -- 6 hours
+          2 * 24 * 60 * 60,   // level 1 -- 2 days
+          7 * 24 * 60 * 60,   // level 2 -- 7 days
+         30 * 24 * 60 * 60,   // level 3 -- 30 days
+        180 * 24 * 60 * 60,   // level 4 -- 180 days
+    };
+    private static final int MAX_LEVEL = PRACTICE_INTERVALS.length - 1;
+
+    private static int clamp(int level) {
+        if (level < 0)
+            level = 0;
+        if (level > MAX_LEVEL)
+            level = MAX_LEVEL;
+        return level;
+    }
+
+    private static long getInterval(int level) {
+        return PRACTICE_INTERVALS[clamp(level)];
+    }
+
+    public static int getNumStars(int level, int maxStars) {
+        return (clamp(level) + 1) * maxStars / (MAX_LEVEL + 1);
+    }
+}
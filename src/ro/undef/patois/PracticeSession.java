@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+
+// Serves the words of a practice session from a queue of words selected in
+// advance.  The queue is refilled with a batch of distinct words (drawn
+// without replacement) whenever it runs low, so most calls to nextWord()
+// don't have to go through the sampler at all, and a session doesn't keep
+// returning the same few heavy words.
+//
+// nextWord() is meant to be called from a background thread, which then
+// also does the refills.
+
+public class PracticeSession {
+    // The number of words selected in advance.
+    public static final int BATCH_SIZE = 8;
+    // The queue is refilled when it has this many words left.
+    private static final int LOW_WATER_MARK = BATCH_SIZE / 2;
+
+    private Trainer mTrainer;
+    private Language mLanguage;
+    private Trainer.Direction mDirection;
+    private LinkedList<Long> mQueue;
+
+    public PracticeSession(Trainer trainer, Language language, Trainer.Direction direction) {
+        mTrainer = trainer;
+        mLanguage = language;
+        mDirection = direction;
+        mQueue = new LinkedList<Long>();
+    }
+
+    public Language getLanguage() {
+        return mLanguage;
+    }
+
+    public Trainer.Direction getDirection() {
+        return mDirection;
+    }
+
+    // Returns the ID of the next word to practice.  currentWordId is the
+    // word being practiced right now (or -1), which is never returned.
+    public synchronized long nextWord(long currentWordId) throws Trainer.EmptyException {
+        mQueue.remove(Long.valueOf(currentWordId));
+        if (mQueue.size() <= LOW_WATER_MARK)
+            refill(currentWordId);
+
+        if (mQueue.isEmpty())
+            throw new Trainer.EmptyException();
+
+        return mQueue.removeFirst();
+    }
+
+    // Drops the words selected in advance, e.g., after their practice data
+    // was changed by something other than this session.
+    public synchronized void reset() {
+        mQueue.clear();
+    }
+
+    private void refill(long currentWordId) {
+        HashSet<Long> excludedWordIds = new HashSet<Long>(mQueue);
+        excludedWordIds.add(currentWordId);
+
+        try {
+            for (long wordId : mTrainer.selectWords(mLanguage, mDirection,
+                                                    BATCH_SIZE - mQueue.size(),
+                                                    excludedWordIds))
+                mQueue.addLast(wordId);
+        } catch (Trainer.EmptyException e) {
+            // There might still be some words in the queue.
+        }
+    }
+}
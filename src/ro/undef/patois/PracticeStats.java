@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+// The practice statistics of a language, as shown by MainActivity: the
+// number of words with each score color, and the average number of stars,
+// in each direction.  They are computed from the rows of the practice_stats
+// table (see Database.getPracticeStats()).
+//
+// The colors follow ScoreRenderer, but to the day: a word is "good" if it's
+// not due before today, "average" if it has been due for at most a week,
+// and "bad" otherwise.
+
+public class PracticeStats {
+    public static final int GOOD = 0;
+    public static final int AVERAGE = 1;
+    public static final int BAD = 2;
+    private static final int NUM_COLORS = 3;
+
+    private static final long ONE_DAY = 24 * 60 * 60;
+    private static final long ONE_WEEK_IN_DAYS = 7;
+
+    private long mToday;
+    // Indexed by Trainer.Direction.getValue() and then by color.
+    private int[][] mNumWords;
+    // Indexed by Trainer.Direction.getValue().
+    private long[] mNumStars;
+
+    public PracticeStats(long now) {
+        mToday = now / ONE_DAY;
+
+        int numDirections = Trainer.Direction.values().length;
+        mNumWords = new int[numDirections][NUM_COLORS];
+        mNumStars = new long[numDirections];
+    }
+
+    // Adds a row of the practice_stats table.
+    public void add(Trainer.Direction direction, int level, long dueDay, int numWords) {
+        int color = BAD;
+        if (dueDay >= mToday)
+            color = GOOD;
+        else if (dueDay >= mToday - ONE_WEEK_IN_DAYS)
+            color = AVERAGE;
+
+        mNumWords[direction.getValue()][color] += numWords;
+        mNumStars[direction.getValue()] +=
+            (long) PracticeSchedule.getNumStars(level, ScoreRenderer.MAX_STARS) * numWords;
+    }
+
+    public int getNumWords(Trainer.Direction direction, int color) {
+        return mNumWords[direction.getValue()][color];
+    }
+
+    // The number of words in the language (which is the same in both
+    // directions).
+    public int getNumWords() {
+        return getNumWords(Trainer.Direction.FROM_FOREIGN);
+    }
+
+    public int getNumWords(Trainer.Direction direction) {
+        int numWords = 0;
+        for (int color = 0; color < NUM_COLORS; color++)
+            numWords += mNumWords[direction.getValue()][color];
+        return numWords;
+    }
+
+    // The average number of stars of the words, in both directions.
+    public float getAverageStars() {
+        long numStars = 0;
+        int numScores = 0;
+        for (Trainer.Direction direction : Trainer.Direction.values()) {
+            numStars += mNumStars[direction.getValue()];
+            numScores += getNumWords(direction);
+        }
+
+        return numScores > 0 ? (float) numStars / numScores : 0;
+    }
+}
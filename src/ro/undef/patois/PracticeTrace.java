@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+// The latencies felt while practicing, aggregated over a practice session
+// (i.e., a PracticeActivity), for judging changes to Trainer and Database
+// on real devices:
+//
+//   - ANSWER_TO_NEXT_CARD: from tapping "yes" or "no" until the next word
+//     is first drawn.
+//   - SHOW_TO_ANSWER: from tapping "show" until the answer is first drawn.
+//   - RESTART_FRAME, BUTTONS_FRAME: the time between consecutive frames
+//     while the words animate out and in, and while the buttons flip.
+//
+// The traces are recorded together with the DatabaseMetrics, and only while
+// those are enabled.  The most recent sessions are kept in memory, and can
+// be seen and exported with MetricsActivity.
+
+public class PracticeTrace {
+    public static final int ANSWER_TO_NEXT_CARD = 0;
+    public static final int SHOW_TO_ANSWER = 1;
+    public static final int RESTART_FRAME = 2;
+    public static final int BUTTONS_FRAME = 3;
+    public static final int NUM_INTERVALS = 4;
+
+    private static final String[] INTERVAL_NAMES = {
+        "answer_to_next_card",
+        "show_to_answer",
+        "restart_frame",
+        "buttons_frame",
+    };
+
+    private static final int MAX_SESSIONS = 10;
+
+    // Newest first.
+    private static final LinkedList<PracticeTrace> sSessions = new LinkedList<PracticeTrace>();
+
+    // The UNIX timestamp of the start of the session.
+    public final long startTime;
+    public final String direction;
+    private final LatencyHistogram[] mIntervals;
+
+    private PracticeTrace(long startTime, String direction) {
+        this.startTime = startTime;
+        this.direction = direction;
+
+        mIntervals = new LatencyHistogram[NUM_INTERVALS];
+        for (int i = 0; i < NUM_INTERVALS; i++)
+            mIntervals[i] = new LatencyHistogram();
+    }
+
+    // Returns the trace of a new session, or null if the metrics are not
+    // being recorded.
+    public static PracticeTrace startSession(long startTime, String direction) {
+        if (!DatabaseMetrics.isEnabled())
+            return null;
+
+        PracticeTrace trace = new PracticeTrace(startTime, direction);
+        synchronized (sSessions) {
+            sSessions.addFirst(trace);
+            if (sSessions.size() > MAX_SESSIONS)
+                sSessions.removeLast();
+        }
+        return trace;
+    }
+
+    public static ArrayList<PracticeTrace> getSessions() {
+        synchronized (sSessions) {
+            return new ArrayList<PracticeTrace>(sSessions);
+        }
+    }
+
+    public static void reset() {
+        synchronized (sSessions) {
+            sSessions.clear();
+        }
+    }
+
+    public void record(int interval, long micros) {
+        mIntervals[interval].record(micros);
+    }
+
+    public LatencyHistogram getInterval(int interval) {
+        return mIntervals[interval];
+    }
+
+    public static String getIntervalName(int interval) {
+        return INTERVAL_NAMES[interval];
+    }
+
+    // Writes the sessions as a JSON array, newest first, with the latencies
+    // in microseconds.  The lines after the first one are indented with
+    // indent.
+    public static void writeJson(Writer out, String indent) throws IOException {
+        out.write("[");
+
+        boolean first = true;
+        for (PracticeTrace trace : getSessions()) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write(indent + "  {\n");
+            out.write(indent + "    \"start_time\": " + trace.startTime + ",\n");
+            out.write(indent + "    \"direction\": \"" + trace.direction + "\"");
+
+            for (int i = 0; i < NUM_INTERVALS; i++) {
+                LatencyHistogram latency = trace.getInterval(i);
+                out.write(",\n");
+                out.write(indent + "    \"" + INTERVAL_NAMES[i] + "\": {" +
+                          "\"count\": " + latency.getCount() + ", " +
+                          "\"p50_us\": " + latency.getPercentile(50) + ", " +
+                          "\"p90_us\": " + latency.getPercentile(90) + ", " +
+                          "\"p99_us\": " + latency.getPercentile(99) + ", " +
+                          "\"max_us\": " + latency.getMax() + "}");
+            }
+            out.write("\n" + indent + "  }");
+        }
+
+        out.write(first ? "]" : "\n" + indent + "]");
+    }
+}
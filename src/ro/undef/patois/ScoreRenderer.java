@@ -17,48 +17,115 @@
 package ro.undef.patois;
 
 import android.content.Context;
-import android.text.Spannable;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
 import android.text.style.TextAppearanceSpan;
 
 
+// Renders the scores of the words as colored stars.  A score only depends on
+// the number of stars and on the color, so all the possible renderings (and
+// all the pairs of them, for renderScores()) are built once, on first use,
+// and then shared.  Rendering a score doesn't allocate anything.  The
+// renderings are immutable SpannedStrings, which TextView.setText() uses
+// without copying them.
+
 public class ScoreRenderer {
+    public static final int MAX_STARS = 4;
+
+    private static final int GOOD = 0;
+    private static final int AVERAGE = 1;
+    private static final int BAD = 2;
+    private static final int NUM_COLORS = 3;
+    private static final int NUM_SCORES = (MAX_STARS + 1) * NUM_COLORS;
+
+    private static final long ONE_WEEK = 7 * 24 * 60 * 60;
+
     private Context mContext;
-    private int mStyleGood;
-    private int mStyleAverage;
-    private int mStyleBad;
+    private int[] mStyles;
     private long mTimeNow;
 
+    // Indexed by getScoreIndex().
+    private Spanned[] mScores;
+    // Indexed by the getScoreIndex() of the "from" and "to" scores.
+    private Spanned[][] mScorePairs;
+
     public ScoreRenderer(Context context, int styleGood, int styleAverage, int styleBad) {
         mContext = context;
-        mStyleGood = styleGood;
-        mStyleAverage = styleAverage;
-        mStyleBad = styleBad;
+        mStyles = new int[NUM_COLORS];
+        mStyles[GOOD] = styleGood;
+        mStyles[AVERAGE] = styleAverage;
+        mStyles[BAD] = styleBad;
         mTimeNow = System.currentTimeMillis() / 1000;
     }
 
-    public Spannable resetAndRenderScore(Trainer.PracticeInfo info) {
+    public Spanned resetAndRenderScore(Trainer.PracticeInfo info) {
         mTimeNow = System.currentTimeMillis() / 1000;
-        SpannableStringBuilder ssb = new SpannableStringBuilder();
-        renderStarsTo(ssb, info.level, info.nextPractice);
-        return ssb;
+        return getScores()[getScoreIndex(info.level, info.nextPractice)];
+    }
+
+    public Spanned renderScores(int levelFrom, long nextPracticeFrom,
+                                int levelTo, long nextPracticeTo) {
+        getScores();
+        return mScorePairs[getScoreIndex(levelFrom, nextPracticeFrom)]
+                          [getScoreIndex(levelTo, nextPracticeTo)];
+    }
+
+    private int getScoreIndex(int level, long nextPractice) {
+        int color = BAD;
+        if (nextPractice >= mTimeNow)
+            color = GOOD;
+        else if (nextPractice >= mTimeNow - ONE_WEEK)
+            color = AVERAGE;
+
+        return PracticeSchedule.getNumStars(level, MAX_STARS) * NUM_COLORS + color;
     }
 
-    public Spannable renderScores(int levelFrom, long nextPracticeFrom,
-                                  int levelTo, long nextPracticeTo) {
-        SpannableStringBuilder ssb = new SpannableStringBuilder();
+    private Spanned[] getScores() {
+        if (mScores == null)
+            buildScores();
+        return mScores;
+    }
+
+    private void buildScores() {
+        // The spans are immutable, so they can be shared as well, except
+        // within the same text: setting a span which is already attached
+        // moves it instead.  So the second line of the pairs gets spans of
+        // its own.
+        TextAppearanceSpan[] firstLineSpans = new TextAppearanceSpan[NUM_COLORS];
+        TextAppearanceSpan[] secondLineSpans = new TextAppearanceSpan[NUM_COLORS];
+        for (int color = 0; color < NUM_COLORS; color++) {
+            firstLineSpans[color] = new TextAppearanceSpan(mContext, mStyles[color]);
+            secondLineSpans[color] = new TextAppearanceSpan(mContext, mStyles[color]);
+        }
 
-        renderStarsTo(ssb, levelFrom, nextPracticeFrom);
-        ssb.append('\n');
-        renderStarsTo(ssb, levelTo, nextPracticeTo);
+        mScores = new Spanned[NUM_SCORES];
+        for (int score = 0; score < NUM_SCORES; score++) {
+            SpannableStringBuilder ssb = new SpannableStringBuilder();
+            renderScoreTo(ssb, score, firstLineSpans);
+            mScores[score] = new SpannedString(ssb);
+        }
+
+        mScorePairs = new Spanned[NUM_SCORES][NUM_SCORES];
+        for (int from = 0; from < NUM_SCORES; from++) {
+            for (int to = 0; to < NUM_SCORES; to++) {
+                SpannableStringBuilder ssb = new SpannableStringBuilder();
+                renderScoreTo(ssb, from, firstLineSpans);
+                ssb.append('\n');
+                renderScoreTo(ssb, to, secondLineSpans);
+                mScorePairs[from][to] = new SpannedString(ssb);
+            }
+        }
+    }
 
-        return ssb;
+    // Renders the score with the given getScoreIndex().
+    private static void renderScoreTo(SpannableStringBuilder ssb, int score,
+                                      TextAppearanceSpan[] spans) {
+        renderStarsTo(ssb, score / NUM_COLORS, spans[score % NUM_COLORS]);
     }
 
-    private Spannable renderStarsTo(SpannableStringBuilder ssb,
-                                    int level, long nextPractice) {
-        final int MAX_STARS = 4;
-        int numStars = Trainer.getNumStars(level, MAX_STARS);
+    private static void renderStarsTo(SpannableStringBuilder ssb, int numStars,
+                                      TextAppearanceSpan span) {
         int start = ssb.length();
 
         if (numStars > 0) {
@@ -68,16 +135,6 @@ public class ScoreRenderer {
             ssb.append('\u2666');   // A full diamond.
         }
 
-        final long ONE_WEEK = 7 * 24 * 60 * 60;
-
-        int style = mStyleBad;
-        if (nextPractice >= mTimeNow)
-            style = mStyleGood;
-        else if (nextPractice >= mTimeNow - ONE_WEEK)
-            style = mStyleAverage;
-
-        ssb.setSpan(new TextAppearanceSpan(mContext, style), start, ssb.length(), 0);
-
-        return ssb;
+        ssb.setSpan(span, start, ssb.length(), 0);
     }
 }
@@ -16,7 +16,9 @@
 
 package ro.undef.patois;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
 
 public class Trainer {
     private final static String TAG = "Trainer";
@@ -28,102 +30,88 @@ public class Trainer {
     public final static int MANUAL_SCORE_RESET_VERSION = 1;
 
     private Database mDb;
-    private Random mRandom;
+    private Sampler mSampler;
 
     public Trainer(Database db) {
+        this(db, new PoolSampler(db));
+    }
+
+    public Trainer(Database db, Sampler sampler) {
         mDb = db;
-        mRandom = new Random();
+        mSampler = sampler;
     }
 
     // Returns a random word ID for practice.  The probablility of a word being
     // selected is directly proportional with its weight.
     public long selectWord(Language language, Direction direction) throws EmptyException {
-        ArrayList<Weight> weights = mDb.getWordWeights(language, direction);
-        int numWeights = weights.size();
-        long maxWeight = -1;
-        long totalWeight = 0;
-        for (Weight w : weights) {
-            totalWeight += w.weight;
-            if (w.weight > maxWeight)
-                maxWeight = w.weight;
-        }
-
-        if (numWeights == 0 || totalWeight == 0)
-            throw new EmptyException();
-
-        // This is an implementation of the rejection sampling algorithm for
-        // generating random samples with a particular probablility
-        // distribution.  For details, see:
-        //     http://en.wikipedia.org/wiki/Rejection_sampling
-
-        // numAttempts is twice the expected number of attempts to get an
-        // accepted word.  We use this to make sure we always terminate, even
-        // if the weights distribution is really "adverse" (i.e., the
-        // "unconditional acceptance probability" is very low).
-        int numAttempts = (int) (2L * maxWeight * numWeights / totalWeight + 1);
-
-        // best is the highest scoring word we've seen in the attempts to
-        // select a word.  It will only be used as a last resort, in case no
-        // word can be selected according to the probability distribution of
-        // the weights.
-        Weight best = null;
-
-        while (numAttempts --> 0) {
-            Weight picked = weights.get(mRandom.nextInt(numWeights));
-            long randomWeight = mRandom.nextLong(maxWeight);
-
-            if (randomWeight < picked.weight)
-                return picked.wordId;
+        Set<Long> none = Collections.emptySet();
+        return mSampler.selectWords(language, direction, 1, none)[0];
+    }
 
-            if (best == null || best.weight < picked.weight)
-                best = picked;
-        }
+    // Returns up to count distinct word IDs for practice, drawn without
+    // replacement, and skipping the words in excludedWordIds.
+    public long[] selectWords(Language language, Direction direction, int count,
+                              Set<Long> excludedWordIds) throws EmptyException {
+        return mSampler.selectWords(language, direction, count, excludedWordIds);
+    }
 
-        return best.wordId;
+    // Starts a practice session, which serves the words to practice from
+    // batches selected in advance.
+    public PracticeSession startSession(Language language, Direction direction) {
+        return new PracticeSession(this, language, direction);
     }
 
+    // Records the answer in the answer queue, which saves it to the
+    // database later, together with the following answers.  Call
+    // flushAnswers() to save it right away.
     public void updatePracticeInfo(Word word, Direction direction, boolean successful) {
-        PracticeInfo info = mDb.getPracticeInfo(word, direction);
+        PracticeInfo info = getPracticeInfo(word, direction);
+        if (info == null)
+            return;
 
+        long now = System.currentTimeMillis() / 1000;
         if (successful) {
-            info.nextPractice = scheduleNextPractice(System.currentTimeMillis() / 1000,
-                                                     info.level);
+            info.nextPractice = PracticeSchedule.scheduleNextPractice(now, info.level);
             info.level++;
         } else {
             info.level = 0;
         }
 
-        mDb.updatePracticeInfo(word, info, TRAINER_VERSION, successful);
+        getAnswerQueue(mDb).add(mDb, new Answer(TRAINER_VERSION, word.getId(),
+                                                word.getLanguage().getId(), direction,
+                                                successful, info.level, info.nextPractice,
+                                                now));
     }
 
-    public static long scheduleNextPractice(long now, int level) {
-        return now + getInterval(level);
+    // Like Database.getPracticeInfo(), but takes into account the answers
+    // that were not saved yet.
+    public PracticeInfo getPracticeInfo(Word word, Direction direction) {
+        Answer pending = getAnswerQueue(mDb).getPending(word.getId(), direction);
+        if (pending != null)
+            return new PracticeInfo(direction, pending.level, pending.nextPractice);
+
+        return mDb.getPracticeInfo(word, direction);
     }
 
-    // The minimum time in seconds between two practices of the same word.
-    private static final long[] PRACTICE_INTERVALS = {
-          6 * 60 * 60,        // level 0 -- 6 hours
-          2 * 24 * 60 * 60,   // level 1 -- 2 days
-          7 * 24 * 60 * 60,   // level 2 -- 7 days
-         30 * 24 * 60 * 60,   // level 3 -- 30 days
-        180 * 24 * 60 * 60,   // level 4 -- 180 days
-    };
-    private static final int MAX_LEVEL = PRACTICE_INTERVALS.length - 1;
-
-    private static int clamp(int level) {
-        if (level < 0)
-            level = 0;
-        if (level > MAX_LEVEL)
-            level = MAX_LEVEL;
-        return level;
+    // Saves all the answers given so far.
+    public void flushAnswers() {
+        flushAnswers(mDb);
     }
 
-    private static long getInterval(int level) {
-        return PRACTICE_INTERVALS[clamp(level)];
+    // Like flushAnswers(), for the callers which don't have a Trainer.
+    public static void flushAnswers(Database db) {
+        getAnswerQueue(db).flush(db);
     }
 
-    public static int getNumStars(int level, int maxStars) {
-        return (clamp(level) + 1) * maxStars / (MAX_LEVEL + 1);
+    // The answer queue is shared by all the trainers, so that the answers
+    // given in one activity are visible to the next one even before they
+    // are saved.
+    private static AnswerQueue sAnswerQueue;
+
+    private static synchronized AnswerQueue getAnswerQueue(Database db) {
+        if (sAnswerQueue == null)
+            sAnswerQueue = new AnswerQueue(db.getAnswerJournalFile());
+        return sAnswerQueue;
     }
 
     public static enum Direction {
@@ -161,18 +149,18 @@ public class Trainer {
         }
     };
 
-    // Lightweight class for storing just a word ID and a weight.
-    public static class Weight {
-        public long wordId;
-        public long weight;
-
-        public Weight(long wordId, long weight) {
-            this.wordId = wordId;
-            this.weight = weight;
-        }
+    // The strategy used by selectWords() for picking the next words.  The
+    // weight of a word is the number of seconds since it was due for
+    // practice, except for the excludedWordIds, whose weight is always zero.
+    // Implementations must return between 1 and count distinct words, drawn
+    // without replacement, and throw EmptyException if no word has a
+    // positive weight.
+    public interface Sampler {
+        public long[] selectWords(Language language, Direction direction, int count,
+                                  Set<Long> excludedWordIds) throws EmptyException;
     }
 
-    public static class PracticeInfo {
+    public static class PracticeInfo implements Serializable {
         public Direction direction;
         public int level;
         public long nextPractice;
@@ -182,6 +170,34 @@ public class Trainer {
             this.level = level;
             this.nextPractice = nextPractice;
         }
+
+        // Required for the Serializable interface.
+        static final long serialVersionUID = 3162945071738325418L;
+    }
+
+    // An answer given during practice, together with the practice info it
+    // results in.
+    public static class Answer {
+        public final int trainerVersion;
+        public final long wordId;
+        public final long languageId;
+        public final Direction direction;
+        public final boolean successful;
+        public final int level;
+        public final long nextPractice;
+        public final long timestamp;
+
+        public Answer(int trainerVersion, long wordId, long languageId, Direction direction,
+                      boolean successful, int level, long nextPractice, long timestamp) {
+            this.trainerVersion = trainerVersion;
+            this.wordId = wordId;
+            this.languageId = languageId;
+            this.direction = direction;
+            this.successful = successful;
+            this.level = level;
+            this.nextPractice = nextPractice;
+            this.timestamp = timestamp;
+        }
     }
 
     // Exception thrown when an attempt is made to select a word from an empty trainer.
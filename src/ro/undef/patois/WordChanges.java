@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The words changed or deleted by a transaction, which the registered
+// WordObservers are told about once it commits.  Database queues one of
+// these with the cache updates of a transaction, so each word is reported
+// once, even if the transaction changed it several times (e.g., when
+// EditWordActivity saves a word along with all its translations).
+
+public class WordChanges implements Runnable {
+    private static final ArrayList<WordObserver> sObservers = new ArrayList<WordObserver>();
+
+    // Maps the IDs of the words to whether they were deleted, in the order
+    // in which they were first changed.
+    private LinkedHashMap<Long, Boolean> mChanges;
+
+    public WordChanges() {
+        mChanges = new LinkedHashMap<Long, Boolean>();
+    }
+
+    public static void registerObserver(WordObserver observer) {
+        synchronized (sObservers) {
+            sObservers.add(observer);
+        }
+    }
+
+    public static void unregisterObserver(WordObserver observer) {
+        synchronized (sObservers) {
+            sObservers.remove(observer);
+        }
+    }
+
+    private static WordObserver[] getObservers() {
+        synchronized (sObservers) {
+            return sObservers.toArray(new WordObserver[sObservers.size()]);
+        }
+    }
+
+    public void wordChanged(long wordId) {
+        if (!mChanges.containsKey(wordId))
+            mChanges.put(wordId, false);
+    }
+
+    // A deleted word is only reported as deleted, even if it was changed
+    // earlier in the transaction.
+    public void wordDeleted(long wordId) {
+        mChanges.put(wordId, true);
+    }
+
+    // Tells the observers about the changes.
+    public void run() {
+        if (mChanges.isEmpty())
+            return;
+
+        WordObserver[] observers = getObservers();
+        for (Map.Entry<Long, Boolean> change : mChanges.entrySet()) {
+            long wordId = change.getKey();
+            for (WordObserver observer : observers) {
+                if (change.getValue())
+                    observer.onWordDeleted(wordId);
+                else
+                    observer.onWordChanged(wordId);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// An in-memory prefix index over the names of the words in one language,
+// used for autocompleting translations in EditWordActivity.
+//
+// The index is a sorted array of keys, searched with binary search.  There
+// is one key for each token of a word name, going from the start of the
+// token to the end of the name, so typing "ko" finds "die Kost".  The keys
+// are folded to lower case and stripped of accents, so typing "mancare"
+// also finds "mâncare".
+
+public class WordIndex {
+    private ArrayList<Entry> mEntries;
+    // The names of the indexed words, needed for finding their keys when
+    // removing them.
+    private HashMap<Long, String> mNames;
+
+    public WordIndex() {
+        mEntries = new ArrayList<Entry>();
+        mNames = new HashMap<Long, String>();
+    }
+
+    public synchronized void add(long wordId, String name) {
+        remove(wordId);
+        mNames.put(wordId, name);
+
+        for (String key : getKeys(name)) {
+            Entry entry = new Entry(key, wordId, name);
+            int pos = Collections.binarySearch(mEntries, entry);
+            if (pos < 0)
+                mEntries.add(-pos - 1, entry);
+        }
+    }
+
+    // Adds many words at once, given as a map from their IDs to their names.
+    // The keys are sorted only once, at the end, while calling add() for
+    // each word would move the following keys every time, which is O(n^2)
+    // when loading a whole language.
+    public synchronized void addAll(Map<Long, String> names) {
+        for (Map.Entry<Long, String> word : names.entrySet()) {
+            long wordId = word.getKey();
+            String name = word.getValue();
+
+            remove(wordId);
+            mNames.put(wordId, name);
+            for (String key : getKeys(name))
+                mEntries.add(new Entry(key, wordId, name));
+        }
+
+        Collections.sort(mEntries);
+    }
+
+    public synchronized void remove(long wordId) {
+        String name = mNames.remove(wordId);
+        if (name == null)
+            return;
+
+        for (String key : getKeys(name)) {
+            int pos = Collections.binarySearch(mEntries, new Entry(key, wordId, name));
+            if (pos >= 0)
+                mEntries.remove(pos);
+        }
+    }
+
+    // Returns at most maxResults words that have a token starting with
+    // prefix, skipping the word with the ID excludedId.
+    public synchronized ArrayList<Entry> find(String prefix, long excludedId, int maxResults) {
+        ArrayList<Entry> results = new ArrayList<Entry>();
+        String key = fold(prefix.trim());
+
+        // The first entry whose key is not smaller than the prefix.
+        int pos = Collections.binarySearch(mEntries, new Entry(key, Long.MIN_VALUE, null));
+        if (pos < 0)
+            pos = -pos - 1;
+
+        int numEntries = mEntries.size();
+        for (; pos < numEntries && results.size() < maxResults; pos++) {
+            Entry entry = mEntries.get(pos);
+            if (!entry.key.startsWith(key))
+                break;
+            if (entry.wordId == excludedId || containsWord(results, entry.wordId))
+                continue;
+            results.add(entry);
+        }
+
+        return results;
+    }
+
+    private static boolean containsWord(ArrayList<Entry> entries, long wordId) {
+        for (Entry entry : entries) {
+            if (entry.wordId == wordId)
+                return true;
+        }
+        return false;
+    }
+
+    private static ArrayList<String> getKeys(String name) {
+        ArrayList<String> keys = new ArrayList<String>();
+        String folded = fold(name);
+
+        int length = folded.length();
+        for (int i = 0; i < length; i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i)) &&
+                (i == 0 || !Character.isLetterOrDigit(folded.charAt(i - 1))))
+                keys.add(folded.substring(i));
+        }
+        if (keys.isEmpty())
+            keys.add(folded);
+
+        return keys;
+    }
+
+    // The accented letters (in lower case) and their unaccented versions.
+    // java.text.Normalizer would do this for us, but it's only available
+    // starting with API level 9.
+    private static final String ACCENTED =
+        "àáâãäåāăąçćĉċčďđèéêëēĕėęěĝğġģĥħìíîïĩīĭįıĵķĺļľŀłñńņňŉ" +
+        "òóôõöøōŏőŕŗřśŝşšșţťŧțùúûüũūŭůűųŵýÿŷźżž";
+    private static final String UNACCENTED =
+        "aaaaaaaaacccccddeeeeeeeeegggghhiiiiiiiiijklllllnnnnn" +
+        "ooooooooorrrsssssttttuuuuuuuuuuwyyyzzz";
+
+    // Lookup table for the folding, covering Latin-1 and Latin Extended-A/B.
+    private static final int FOLD_TABLE_SIZE = 0x250;
+    private static final char[] FOLD_TABLE = new char[FOLD_TABLE_SIZE];
+    static {
+        for (char c = 0; c < FOLD_TABLE_SIZE; c++)
+            FOLD_TABLE[c] = Character.toLowerCase(c);
+        for (int i = 0; i < ACCENTED.length(); i++) {
+            char c = ACCENTED.charAt(i);
+            FOLD_TABLE[c] = UNACCENTED.charAt(i);
+            FOLD_TABLE[Character.toUpperCase(c)] = UNACCENTED.charAt(i);
+        }
+    }
+
+    // Converts str to lower case and removes the accents.
+    public static String fold(String str) {
+        int length = str.length();
+        char[] folded = new char[length];
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            folded[i] = (c < FOLD_TABLE_SIZE) ? FOLD_TABLE[c] : Character.toLowerCase(c);
+        }
+        return new String(folded);
+    }
+
+    public static class Entry implements Comparable<Entry> {
+        public final String key;
+        public final long wordId;
+        public final String name;
+
+        public Entry(String key, long wordId, String name) {
+            this.key = key;
+            this.wordId = wordId;
+            this.name = name;
+        }
+
+        public int compareTo(Entry that) {
+            int result = this.key.compareTo(that.key);
+            if (result != 0)
+                return result;
+            if (this.wordId < that.wordId)
+                return -1;
+            if (this.wordId > that.wordId)
+                return 1;
+            return 0;
+        }
+    }
+}
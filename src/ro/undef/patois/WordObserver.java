@@ -0,0 +1,28 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+// Notified whenever a single word is added, changed or deleted, so that the
+// lists showing it can be patched instead of reloaded (see
+// BrowseWordsActivity).  A change of the translations of a word counts as a
+// change of the word.  The observers are registered with WordChanges, and
+// are called on the thread which made the change, once it's committed.
+
+public interface WordObserver {
+    public void onWordChanged(long wordId);
+    public void onWordDeleted(long wordId);
+}
@@ -68,11 +68,11 @@ public class WordsExporter extends FilePicker {
             private Database mDb;
 
             protected void onStart() {
-                mDb = new Database(getActivity());
+                mDb = PatoisApplication.acquireDatabase(getActivity());
             }
 
             protected void onFinishImmediate(boolean successful) {
-                mDb.close();
+                mDb.release();
             }
 
             protected void onFinish(boolean successful) {
@@ -135,31 +135,44 @@ public class WordsExporter extends FilePicker {
             }
 
             private void writeWords(CSVWriter csvOut) throws IOException {
+                // The fields of the current word, which spans one or more
+                // consecutive rows of the cursor (one per translation).
+                ArrayList<String> fields = new ArrayList<String>();
+                long wordId = -1;
+
                 Cursor cursor = mDb.getExportWordsCursor();
                 try {
                     while (cursor.moveToNext()) {
-                        writeWord(cursor.getLong(0), csvOut);
+                        long id = cursor.getLong(Database.EXPORT_WORDS_ID_COLUMN);
+                        if (id != wordId) {
+                            if (wordId != -1)
+                                writeWord(fields, csvOut);
+
+                            wordId = id;
+                            fields.clear();
+                            fields.add(CSVFormat.WORD_TAG);
+                            fields.add(cursor.getString(
+                                        Database.EXPORT_WORDS_LANGUAGE_CODE_COLUMN));
+                            fields.add(cursor.getString(Database.EXPORT_WORDS_NAME_COLUMN));
+                        }
+
+                        if (!cursor.isNull(Database.EXPORT_WORDS_TRANSLATION_NAME_COLUMN)) {
+                            fields.add(cursor.getString(
+                                        Database.EXPORT_WORDS_TRANSLATION_LANGUAGE_CODE_COLUMN));
+                            fields.add(cursor.getString(
+                                        Database.EXPORT_WORDS_TRANSLATION_NAME_COLUMN));
+                        }
                     }
+                    if (wordId != -1)
+                        writeWord(fields, csvOut);
                 } finally {
                     cursor.close();
                 }
             }
 
-            private void writeWord(long wordId, CSVWriter csvOut) throws IOException {
-                Word word = mDb.getWord(wordId);
-                ArrayList<Word> translations = mDb.getTranslations(word);
-
-                String[] fields = new String[1 + 2 + 2 * translations.size()];
-                int i = 0;
-                fields[i++] = CSVFormat.WORD_TAG;
-                fields[i++] = word.getLanguage().getCode();
-                fields[i++] = word.getName();
-                for (Word translation : translations) {
-                    fields[i++] = translation.getLanguage().getCode();
-                    fields[i++] = translation.getName();
-                }
-
-                csvOut.writeRow(fields);
+            private void writeWord(ArrayList<String> fields, CSVWriter csvOut)
+                    throws IOException {
+                csvOut.writeRow(fields.toArray(new String[fields.size()]));
             }
         };
     }
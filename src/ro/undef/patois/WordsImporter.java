@@ -0,0 +1,194 @@
+/*
+ * Copyright 2011 David Lazăr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ro.undef.patois;
+
+import android.os.Environment;
+import android.util.Log;
+import android.widget.Toast;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import ro.undef.csv.CSVReader;
+
+
+// Imports the languages and words from a CSV file in the format written by
+// WordsExporter (see doc/csv-format.txt).  The file is parsed incrementally,
+// and everything is added through a single Database.Importer, so either the
+// whole file is imported or nothing is.
+public class WordsImporter extends FilePicker {
+    private final static String TAG = "WordsImporter";
+
+    private File mInputFile;
+
+    public WordsImporter(int dialogIdBase) {
+        super(getDefaultCsvFileName(),
+              dialogIdBase,
+              R.string.import_words_from_csv,
+              R.layout.import_words_dialog,
+              R.string.import_action,
+              // We never overwrite anything, so this message is never shown.
+              R.string.external_file_exists,
+              R.string.importing_words,
+              R.string.import_successful,
+              R.string.import_failed);
+
+        mInputFile = null;
+    }
+
+    private static String getDefaultCsvFileName() {
+        return new File(Environment.getExternalStorageDirectory(),
+                        CSVFormat.DEFAULT_FILE).getPath();
+    }
+
+    @Override
+    protected void prepareTask() {
+        mInputFile = new File(getFileName());
+        if (!mInputFile.exists()) {
+            String message = String.format(getStringRes(R.string.csv_file_missing),
+                                           getFileName());
+            Toast.makeText(getActivity(), message, Toast.LENGTH_LONG).show();
+
+            showFilePickerDialog();
+            return;
+        }
+
+        startTask();
+    }
+
+    @Override
+    protected PersistentTask getTask() {
+        return new PersistentTask(getActivity()) {
+            private Database mDb;
+
+            protected void onStart() {
+                mDb = PatoisApplication.acquireDatabase(getActivity());
+            }
+
+            protected void onFinishImmediate(boolean successful) {
+                mDb.release();
+            }
+
+            protected void onFinish(boolean successful) {
+                finishTask(successful);
+            }
+
+            protected Boolean doInBackground(Void... unused) {
+                try {
+                    doImport();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not import " + mInputFile, e);
+                    return false;
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Could not import " + mInputFile, e);
+                    return false;
+                }
+
+                return true;
+            }
+
+            private void doImport() throws IOException {
+                Reader in = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(mInputFile), "UTF-8"));
+                try {
+                    Database.Importer importer = mDb.beginImport();
+                    try {
+                        readRows(new CSVReader(in), importer);
+                        importer.setSuccessful();
+                    } finally {
+                        importer.finish();
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+
+            private void readRows(CSVReader csvIn, Database.Importer importer)
+                    throws IOException {
+                boolean sawVersion = false;
+                String[] row;
+
+                while ((row = csvIn.readRow()) != null) {
+                    int numCells = countCells(row);
+                    if (numCells == 0)
+                        continue;
+
+                    String tag = row[0].trim();
+                    if (!sawVersion) {
+                        checkVersion(row, numCells, csvIn);
+                        sawVersion = true;
+                    } else if (tag.equals(CSVFormat.LANGUAGE_TAG)) {
+                        if (numCells != 3)
+                            throw error("Invalid language row", csvIn);
+                        importer.addLanguage(row[1].trim(), row[2].trim());
+                    } else if (tag.equals(CSVFormat.WORD_TAG)) {
+                        if (numCells < 3 || numCells % 2 != 1)
+                            throw error("Invalid word row", csvIn);
+                        long mainWordId = addWord(importer, row[1], row[2], csvIn);
+                        for (int i = 3; i < numCells; i += 2) {
+                            long wordId = addWord(importer, row[i], row[i + 1], csvIn);
+                            importer.addTranslation(mainWordId, wordId);
+                        }
+                    } else {
+                        throw error("Unknown row tag \"" + tag + "\"", csvIn);
+                    }
+                }
+
+                if (!sawVersion)
+                    throw new IllegalArgumentException("Empty file");
+            }
+
+            private void checkVersion(String[] row, int numCells, CSVReader csvIn) {
+                if (numCells != 3 ||
+                        !row[0].trim().equals(CSVFormat.VERSION_TAG) ||
+                        !row[1].trim().equals("Patois"))
+                    throw error("Missing version row", csvIn);
+                if (!row[2].trim().equals(CSVFormat.VERSION))
+                    throw error("Unsupported version \"" + row[2] + "\"", csvIn);
+            }
+
+            private long addWord(Database.Importer importer, String code, String name,
+                                 CSVReader csvIn) {
+                long languageId = importer.getLanguageId(code.trim());
+                if (languageId == -1)
+                    throw error("Undefined language code \"" + code + "\"", csvIn);
+
+                name = name.trim();
+                if (name.length() == 0)
+                    throw error("Empty word", csvIn);
+
+                return importer.addWord(languageId, name);
+            }
+
+            // Returns the number of cells in the row, ignoring the empty
+            // cells at the end.
+            private int countCells(String[] row) {
+                int numCells = row.length;
+                while (numCells > 0 && row[numCells - 1].trim().length() == 0)
+                    numCells--;
+                return numCells;
+            }
+
+            private IllegalArgumentException error(String message, CSVReader csvIn) {
+                return new IllegalArgumentException(
+                        message + " on line " + csvIn.getLineNumber());
+            }
+        };
+    }
+}